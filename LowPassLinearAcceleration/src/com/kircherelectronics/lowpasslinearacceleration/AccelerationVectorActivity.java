@@ -1,25 +1,28 @@
 package com.kircherelectronics.lowpasslinearacceleration;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.app.Activity;
 import android.app.Dialog;
-import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.Window;
 
+import com.kircherelectronics.lowpasslinearacceleration.buffer.SampleRingBuffer;
 import com.kircherelectronics.lowpasslinearacceleration.dialog.FilterSettingsDialog;
 import com.kircherelectronics.lowpasslinearacceleration.dialog.SensorSettingsDialog;
-import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.FilterConsumer;
+import com.kircherelectronics.lowpasslinearacceleration.filter.FilterPipeline;
 import com.kircherelectronics.lowpasslinearacceleration.plot.PlotPrefCallback;
 import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
+import com.kircherelectronics.lowpasslinearacceleration.sensor.SensorHub;
 import com.kircherelectronics.lowpasslinearacceleration.view.AccelerationVectorView;
 
 /*
@@ -47,26 +50,75 @@ import com.kircherelectronics.lowpasslinearacceleration.view.AccelerationVectorV
  * 
  */
 public class AccelerationVectorActivity extends Activity implements
-		SensorEventListener, PlotPrefCallback
+		FilterConsumer, PlotPrefCallback
 {
-	private boolean invertAxisActive = false;
+	private final static int SAMPLE_BUFFER_CAPACITY = 256;
+
+	// Read by the sensor thread
+	private volatile boolean invertAxisActive = false;
 
 	private float lpfTimeConstant = 1;
 
-	private float[] acceleration = new float[3];
+	// Blocks of samples, only touched by the sensor thread
+	private float[] acceleration = new float[SensorHub.BLOCK_SIZE * 3];
+	private float[] linearAcceleration = new float[SensorHub.BLOCK_SIZE * 3];
+
+	// Samples drained from the sensor thread by the UI
+	private long[] sampleTimestamps = new long[SAMPLE_BUFFER_CAPACITY];
+	private float[] sampleAcceleration = new float[SAMPLE_BUFFER_CAPACITY * 3];
+	private float[] sampleLinearAcceleration = new float[SAMPLE_BUFFER_CAPACITY * 3];
+
+	// Set while an update of the view is posted to the UI thread
+	private AtomicBoolean viewUpdatePending = new AtomicBoolean();
 
 	private AccelerationVectorView view;
 
-	private LowPassFilter lpf;
+	// Handler for the UI thread
+	private Handler handler;
+
+	// Filters the samples for every activity of the process
+	private FilterPipeline filterPipeline;
+
+	// Passes samples from the sensor thread to the UI
+	private SampleRingBuffer sampleBuffer;
 
 	private FilterSettingsDialog filterSettingsDialog;
 	private SensorSettingsDialog sensorSettingsDialog;
 
-	// Sensor manager to access the accelerometer sensor
-	private SensorManager sensorManager;
+	// Shares the accelerometer with the rest of the app
+	private SensorHub sensorHub;
 
 	private String frequencySelection;
 
+	// How long the sensor may batch samples, in ms
+	private int reportLatency = 0;
+
+	// The custom sampling period, in microseconds
+	private int samplingPeriod = PrefUtils.DEFAULT_SAMPLING_PERIOD;
+
+	// Shows the most recent sample on the UI thread
+	private Runnable updateView = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// Clear the flag first so samples published while draining
+			// post another update.
+			viewUpdatePending.set(false);
+
+			int length = sampleBuffer.drain(sampleTimestamps,
+					sampleAcceleration, sampleLinearAcceleration);
+
+			if (length > 0)
+			{
+				int latest = (length - 1) * 3;
+
+				view.updatePoint(sampleLinearAcceleration[latest],
+						sampleLinearAcceleration[latest + 1]);
+			}
+		}
+	};
+
 	@Override
 	public void onCreate(Bundle savedInstanceState)
 	{
@@ -76,32 +128,44 @@ public class AccelerationVectorActivity extends Activity implements
 
 		view = (AccelerationVectorView) findViewById(R.id.vector_acceleration);
 
-		sensorManager = (SensorManager) this
-				.getSystemService(Context.SENSOR_SERVICE);
+		sensorHub = SensorHub.getInstance(this);
+
+		handler = new Handler();
 
-		lpf = new LowPassFilter();
-		lpf.setTimeConstant(lpfTimeConstant);
+		filterPipeline = FilterPipeline.getInstance(this);
+
+		sampleBuffer = new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY);
 
 		readFilterPrefs();
 		readSensorPrefs();
 	}
 
 	@Override
-	public void onSensorChanged(SensorEvent event)
+	public void onFilteredSamples(long[] timestamps, float[] values,
+			float[] linearValues, int length)
 	{
-		System.arraycopy(event.values, 0, acceleration, 0, event.values.length);
+		// Invert the axes if desired. The filter is linear, so its output can
+		// be inverted the same way.
+		float sign = this.invertAxisActive ? -1 : 1;
 
-		// Invert the axes if desired.
-		if (this.invertAxisActive)
+		for (int i = 0; i < length * 3; i++)
 		{
-			acceleration[0] = -acceleration[0];
-			acceleration[1] = -acceleration[1];
-			acceleration[2] = -acceleration[2];
+			acceleration[i] = values[i] * sign;
+			linearAcceleration[i] = linearValues[i] * sign;
 		}
 
-		acceleration = lpf.addSamples(acceleration);
+		for (int i = 0; i < length; i++)
+		{
+			sampleBuffer.offer(timestamps[i], acceleration,
+					linearAcceleration, i * 3);
+		}
 
-		view.updatePoint(acceleration[0], acceleration[1]);
+		// Only one update of the view is posted at a time no matter how fast
+		// the samples arrive.
+		if (viewUpdatePending.compareAndSet(false, true))
+		{
+			handler.post(updateView);
+		}
 	}
 
 	@Override
@@ -109,7 +173,15 @@ public class AccelerationVectorActivity extends Activity implements
 	{
 		super.onPause();
 
-		sensorManager.unregisterListener(this);
+		filterPipeline.unsubscribe(this);
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		super.onDestroy();
+
+		handler.removeCallbacks(updateView);
 	}
 
 	@Override
@@ -117,7 +189,14 @@ public class AccelerationVectorActivity extends Activity implements
 	{
 		super.onResume();
 
-		lpf.reset();
+		// The sensor and filter are shared, so pick up settings changed in
+		// another activity before applying them again.
+		readFilterPrefs();
+		readSensorPrefs();
+
+		// The pipeline carries on filtering from where the last activity
+		// left off.
+		filterPipeline.subscribe(this);
 
 		updateSensorDelay();
 	}
@@ -202,7 +281,17 @@ public class AccelerationVectorActivity extends Activity implements
 
 		this.lpfTimeConstant = prefs.getFloat(PrefUtils.LPF_TIME_CONSTANT, 1);
 
-		lpf.setTimeConstant(lpfTimeConstant);
+		filterPipeline.setTimeConstant(lpfTimeConstant);
+
+		String filterType = prefs.getString(PrefUtils.FILTER_TYPE,
+				PrefUtils.FILTER_TYPE_SINGLE_POLE);
+
+		int butterworthOrder = prefs.getInt(PrefUtils.BUTTERWORTH_ORDER,
+				ButterworthFilter.DEFAULT_ORDER);
+
+		filterPipeline.setFilter(
+				filterType.equals(PrefUtils.FILTER_TYPE_BUTTERWORTH),
+				butterworthOrder);
 	}
 
 	/**
@@ -216,6 +305,11 @@ public class AccelerationVectorActivity extends Activity implements
 		this.frequencySelection = prefs.getString(
 				PrefUtils.SENSOR_FREQUENCY_PREF,
 				PrefUtils.SENSOR_FREQUENCY_FAST);
+
+		this.reportLatency = prefs.getInt(PrefUtils.SENSOR_REPORT_LATENCY, 0);
+
+		this.samplingPeriod = prefs.getInt(PrefUtils.SENSOR_SAMPLING_PERIOD,
+				PrefUtils.DEFAULT_SAMPLING_PERIOD);
 	}
 
 	/**
@@ -250,7 +344,7 @@ public class AccelerationVectorActivity extends Activity implements
 
 	/**
 	 * Set the sensor delay based on user preferences. 0 = slow, 1 = medium, 2 =
-	 * fast.
+	 * fast, 3 = the custom sampling period.
 	 * 
 	 * @param position
 	 *            The desired sensor delay.
@@ -260,34 +354,16 @@ public class AccelerationVectorActivity extends Activity implements
 		switch (position)
 		{
 		case 0:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_NORMAL);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_NORMAL);
 			break;
 		case 1:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_GAME);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_GAME);
 			break;
 		case 2:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_FASTEST);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_FASTEST);
+			break;
+		case 3:
+			sensorHub.setSensorDelay(samplingPeriod);
 			break;
 
 		}
@@ -295,10 +371,12 @@ public class AccelerationVectorActivity extends Activity implements
 
 	/**
 	 * Updates the sensor delay based on the user preference. 0 = slow, 1 =
-	 * medium, 2 = fast.
+	 * medium, 2 = fast, 3 = the custom sampling period.
 	 */
 	private void updateSensorDelay()
 	{
+		sensorHub.setMaxReportLatency(reportLatency * 1000);
+
 		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_SLOW))
 		{
 			setSensorDelay(0);
@@ -313,13 +391,10 @@ public class AccelerationVectorActivity extends Activity implements
 		{
 			setSensorDelay(2);
 		}
-	}
-
-	@Override
-	public void onAccuracyChanged(Sensor arg0, int arg1)
-	{
-		// TODO Auto-generated method stub
 
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
+		{
+			setSensorDelay(3);
+		}
 	}
-
 }
@@ -1,21 +1,16 @@
 package com.kircherelectronics.lowpasslinearacceleration;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.Calendar;
 
 import android.app.Activity;
 import android.app.Dialog;
-import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
@@ -34,15 +29,29 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.androidplot.xy.XYPlot;
+import com.kircherelectronics.lowpasslinearacceleration.buffer.SampleRingBuffer;
 import com.kircherelectronics.lowpasslinearacceleration.dialog.FilterSettingsDialog;
 import com.kircherelectronics.lowpasslinearacceleration.dialog.SensorSettingsDialog;
-import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.FilterConsumer;
+import com.kircherelectronics.lowpasslinearacceleration.filter.FilterPipeline;
 import com.kircherelectronics.lowpasslinearacceleration.gauge.GaugeAcceleration;
 import com.kircherelectronics.lowpasslinearacceleration.gauge.GaugeRotation;
+import com.kircherelectronics.lowpasslinearacceleration.log.BinaryLogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.CaptureCallback;
+import com.kircherelectronics.lowpasslinearacceleration.log.CsvLogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogCallback;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogFiles;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogWriter;
+import com.kircherelectronics.lowpasslinearacceleration.log.TriggeredCapture;
 import com.kircherelectronics.lowpasslinearacceleration.plot.DynamicLinePlot;
 import com.kircherelectronics.lowpasslinearacceleration.plot.PlotColor;
 import com.kircherelectronics.lowpasslinearacceleration.plot.PlotPrefCallback;
 import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
+import com.kircherelectronics.lowpasslinearacceleration.sensor.SensorHub;
+import com.kircherelectronics.lowpasslinearacceleration.view.FrameScheduler;
+import com.kircherelectronics.lowpasslinearacceleration.view.RenderCallback;
 
 /*
  * Low-Pass Linear Acceleration
@@ -90,7 +99,8 @@ import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
  * @version %I%, %G%
  */
 public class LinearAccelerationLPFActivity extends Activity implements
-		SensorEventListener, Runnable, OnTouchListener, PlotPrefCallback
+		FilterConsumer, RenderCallback, OnTouchListener, PlotPrefCallback,
+		LogCallback, CaptureCallback
 {
 
 	private static final String tag = LinearAccelerationLPFActivity.class
@@ -106,25 +116,72 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	private final static int PLOT_LPF_AND_DEV_Y_AXIS_KEY = 4;
 	private final static int PLOT_LPF_AND_DEV_Z_AXIS_KEY = 5;
 
+	// The most times per second the plot, gauges and outputs are redrawn
+	private final static int TARGET_FPS = 30;
+
+	// Enough room for a few seconds of samples at the fastest sensor rates if
+	// the UI thread stalls.
+	private final static int SAMPLE_BUFFER_CAPACITY = 1024;
+
+	// Enough room for over 15 seconds of samples at the fastest sensor rates
+	// if the log writer is held up by the storage.
+	private final static int LOG_BUFFER_CAPACITY = 8192;
+
+	// Unless every sample is logged, one sample is logged per interval, in
+	// nanoseconds.
+	private final static long LOG_INTERVAL = 100000000L;
+
+	// The sample rate the pre-trigger ring of a capture is sized for if the
+	// sensor doesn't report its fastest rate, in Hz
+	private final static int CAPTURE_DEFAULT_FREQUENCY = 500;
+
+	// Room in the pre-trigger ring for a sensor that runs a little faster
+	// than it reports
+	private final static float CAPTURE_RATE_MARGIN = 1.25f;
+
 	private boolean plotLPFReady = false;
 
-	private boolean invertAxisActive = false;
+	// Read by the sensor thread
+	private volatile boolean invertAxisActive = false;
 
-	// Indicate if the output should be logged to a .csv file
+	// Indicate if the output should be logged to a file
 	private boolean logData = false;
 
+	// Indicate if the log should be written in the compact binary format
+	private boolean logBinaryActive = false;
+
+	// Indicate if every sample should be logged, read by the sensor thread
+	private volatile boolean logFullRateActive = false;
+
+	// Indicate if impacts should be captured to a file
+	private boolean captureData = false;
+
+	// The linear acceleration that triggers a capture, in g
+	private float captureThreshold = PrefUtils.DEFAULT_CAPTURE_THRESHOLD;
+
+	// How long before and after the trigger is captured, in seconds
+	private float capturePreTrigger = PrefUtils.DEFAULT_CAPTURE_PRE_TRIGGER;
+	private float capturePostTrigger = PrefUtils.DEFAULT_CAPTURE_POST_TRIGGER;
+
 	// Touch to zoom constants for the dynamicPlot
 	private float distance = 0;
 	private float zoom = 1.2f;
 
 	private float lpfTimeConstant = 1;
 
-	// Outputs for the acceleration and LPFs
-	private float[] rawAcceleration = new float[3];
-	private float[] lpfAcceleration = new float[3];
+	// Blocks of acceleration and LPF outputs, only touched by the sensor
+	// callback
+	private float[] rawAcceleration = new float[SensorHub.BLOCK_SIZE * 3];
+	private float[] lpfAcceleration = new float[SensorHub.BLOCK_SIZE * 3];
+
+	// The most recent acceleration and LPF outputs drained by the UI
+	private float[] latestRawAcceleration = new float[3];
+	private float[] latestLpfAcceleration = new float[3];
 
-	// The generation of the log output
-	private int generation = 0;
+	// Samples drained from the sensor callback since the last UI update
+	private long[] sampleTimestamps = new long[SAMPLE_BUFFER_CAPACITY];
+	private float[] sampleRawAcceleration = new float[SAMPLE_BUFFER_CAPACITY * 3];
+	private float[] sampleLpfAcceleration = new float[SAMPLE_BUFFER_CAPACITY * 3];
 
 	// Color keys for the acceleration plot
 	private int plotAccelXAxisColor;
@@ -136,9 +193,6 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	private int plotLPFAndDevYAxisColor;
 	private int plotLPFAndDevZAxisColor;
 
-	// Log output time stamp
-	private long logTime = 0;
-
 	// Decimal formats for the UI outputs
 	private DecimalFormat df;
 	private DecimalFormat dfLong;
@@ -156,37 +210,79 @@ public class LinearAccelerationLPFActivity extends Activity implements
 
 	private GaugeAcceleration gaugeLPFAcceleration;
 
-	// Handler for the UI plots so everything plots smoothly
+	// Handler for the UI thread
 	private Handler handler;
 
+	// Paces the plots and outputs to the display
+	private FrameScheduler frameScheduler;
+
+	// Handler for the sensor thread, which receives the samples
+	private Handler sensorHandler;
+
 	// Icon to indicate logging is active
 	private ImageView iconLogger;
 
-	private LowPassFilter lpf;
+	// Filters the samples for every activity of the process
+	private FilterPipeline filterPipeline;
+
+	// Passes samples from the sensor callback to the UI
+	private SampleRingBuffer sampleBuffer;
 
 	// Plot colors
 	private PlotColor color;
 
-	// Sensor manager to access the accelerometer sensor
-	private SensorManager sensorManager;
+	// Shares the accelerometer with the rest of the app
+	private SensorHub sensorHub;
 
 	private FilterSettingsDialog filterSettingsDialog;
 	private SensorSettingsDialog sensorSettingsDialog;
 
 	// Acceleration plot titles
-	private String plotAccelXAxisTitle = "AX";
-	private String plotAccelYAxisTitle = "AY";
-	private String plotAccelZAxisTitle = "AZ";
+	private String plotAccelXAxisTitle = CsvLogFormat.ACCEL_X_AXIS_TITLE;
+	private String plotAccelYAxisTitle = CsvLogFormat.ACCEL_Y_AXIS_TITLE;
+	private String plotAccelZAxisTitle = CsvLogFormat.ACCEL_Z_AXIS_TITLE;
 
 	// LPF Android Developer plot tiltes
-	private String plotLPFAndDevXAxisTitle = "LPFX";
-	private String plotLPFAndDevYAxisTitle = "LPFY";
-	private String plotLPFAndDevZAxisTitle = "LPFZ";
+	private String plotLPFAndDevXAxisTitle = CsvLogFormat.LPF_X_AXIS_TITLE;
+	private String plotLPFAndDevYAxisTitle = CsvLogFormat.LPF_Y_AXIS_TITLE;
+	private String plotLPFAndDevZAxisTitle = CsvLogFormat.LPF_Z_AXIS_TITLE;
 
 	private String frequencySelection;
 
-	// Output log
-	private String log;
+	// How long the sensor may batch samples, in ms
+	private int reportLatency = 0;
+
+	// The custom sampling period, in microseconds
+	private int samplingPeriod = PrefUtils.DEFAULT_SAMPLING_PERIOD;
+
+	// Streams the output log to a file, only touched by the sensor thread
+	private LogWriter logWriter;
+
+	// The timestamp of the last logged sample, only touched by the sensor
+	// thread
+	private long logTimestamp = 0;
+
+	// Waits for impacts and writes them out, only touched by the sensor
+	// thread
+	private TriggeredCapture capture;
+
+	// The log of the next capture, started ahead of time so a trigger only
+	// has to hand it over, only touched by the sensor thread
+	private LogWriter captureWriter;
+
+	// The number of records a capture log can hold, only touched by the UI
+	// thread
+	private int captureLogCapacity;
+
+	// Prepares the log of the next capture on the UI thread
+	private final Runnable prepareCapture = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			prepareCaptureWriter();
+		}
+	};
 
 	// Acceleration UI outputs
 	private TextView xAxis;
@@ -208,9 +304,10 @@ public class LinearAccelerationLPFActivity extends Activity implements
 				.findViewById(R.id.label_acceleration_name_1);
 		lpfLable.setText("LPF");
 
-		// Get the sensor manager ready
-		sensorManager = (SensorManager) this
-				.getSystemService(Context.SENSOR_SERVICE);
+		// Get the sensor hub ready
+		sensorHub = SensorHub.getInstance(this);
+
+		sensorHandler = sensorHub.getSensorHandler();
 
 		initTextViewOutputs();
 
@@ -227,6 +324,9 @@ public class LinearAccelerationLPFActivity extends Activity implements
 		initGauges();
 
 		handler = new Handler();
+
+		frameScheduler = new FrameScheduler(this);
+		frameScheduler.setTargetFps(TARGET_FPS);
 	}
 
 	/**
@@ -247,14 +347,19 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	{
 		super.onPause();
 
-		sensorManager.unregisterListener(this);
+		filterPipeline.unsubscribe(this);
 
 		if (logData)
 		{
-			writeLogToFile();
+			stopDataLog();
 		}
 
-		handler.removeCallbacks(this);
+		if (captureData)
+		{
+			stopCapture();
+		}
+
+		frameScheduler.stop();
 	}
 
 	@Override
@@ -262,50 +367,87 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	{
 		super.onResume();
 
-		lpf.reset();
-
 		readFilterPrefs();
 		readSensorPrefs();
 
-		handler.post(this);
+		frameScheduler.start();
+
+		// The pipeline carries on filtering from where the last activity
+		// left off.
+		filterPipeline.subscribe(this);
 
 		updateSensorDelay();
 	}
 
 	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy)
+	public void onFilteredSamples(long[] timestamps, float[] values,
+			float[] linearValues, int length)
 	{
-		// TODO Auto-generated method stub
+		float gravity = SensorManager.GRAVITY_EARTH;
+
+		if (invertAxisActive)
+		{
+			gravity = -gravity;
+		}
 
+		// Get a local copy of the sensor values in G's. The filter is
+		// linear, so its output is scaled the same way.
+		for (int i = 0; i < length * 3; i++)
+		{
+			rawAcceleration[i] = values[i] / gravity;
+			lpfAcceleration[i] = linearValues[i] / gravity;
+		}
+
+		for (int i = 0; i < length; i++)
+		{
+			long timestamp = timestamps[i];
+
+			sampleBuffer.offer(timestamp, rawAcceleration, lpfAcceleration,
+					i * 3);
+
+			// Log straight from the sensor thread so every sample can be kept
+			// with its own timestamp.
+			if (logWriter != null
+					&& (logFullRateActive
+							|| timestamp - logTimestamp >= LOG_INTERVAL))
+			{
+				logWriter.offer(timestamp, rawAcceleration, lpfAcceleration,
+						i * 3);
+
+				logTimestamp = timestamp;
+			}
+
+			if (capture != null)
+			{
+				capture.offer(timestamp, rawAcceleration, lpfAcceleration,
+						i * 3);
+			}
+		}
 	}
 
+	/**
+	 * A callback from the capture, on the sensor thread, when an impact
+	 * crosses the threshold. The log was prepared ahead of time, so this only
+	 * hands it over and asks the UI thread to prepare the next one. An impact
+	 * before the next log is ready is skipped.
+	 */
 	@Override
-	public void onSensorChanged(SensorEvent event)
+	public LogWriter onCaptureTriggered(long timestamp)
 	{
-		// Get a local copy of the sensor values
-		System.arraycopy(event.values, 0, rawAcceleration, 0,
-				event.values.length);
+		LogWriter writer = captureWriter;
 
-		if (!invertAxisActive)
-		{
-			rawAcceleration[0] = rawAcceleration[0]
-					/ SensorManager.GRAVITY_EARTH;
-			rawAcceleration[1] = rawAcceleration[1]
-					/ SensorManager.GRAVITY_EARTH;
-			rawAcceleration[2] = rawAcceleration[2]
-					/ SensorManager.GRAVITY_EARTH;
-		}
-		else
+		captureWriter = null;
+
+		if (writer != null)
 		{
-			rawAcceleration[0] = -rawAcceleration[0]
-					/ SensorManager.GRAVITY_EARTH;
-			rawAcceleration[1] = -rawAcceleration[1]
-					/ SensorManager.GRAVITY_EARTH;
-			rawAcceleration[2] = -rawAcceleration[2]
-					/ SensorManager.GRAVITY_EARTH;
+			// Name the capture after the impact rather than when it was
+			// prepared.
+			writer.setName(createLogName());
+
+			handler.post(prepareCapture);
 		}
 
-		lpfAcceleration = lpf.addSamples(rawAcceleration);
+		return writer;
 	}
 
 	@Override
@@ -331,6 +473,11 @@ public class LinearAccelerationLPFActivity extends Activity implements
 			startDataLog();
 			return true;
 
+			// Capture impacts
+		case R.id.action_capture_data:
+			startCapture();
+			return true;
+
 			// Start the vector activity
 		case R.id.action_vector_view:
 			Intent vectorIntent = new Intent(this,
@@ -396,17 +543,33 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	}
 
 	/**
-	 * Output and logs are run on their own thread to keep the UI from hanging
-	 * and the output smooth.
+	 * Render the samples published by the sensor thread since the last frame.
+	 * The plot, gauges and outputs are all updated here so they are
+	 * invalidated together, once per frame, and not at all without new
+	 * samples.
 	 */
 	@Override
-	public void run()
+	public boolean onRenderFrame(long frameTime)
 	{
-		handler.postDelayed(this, 100);
+		int length = sampleBuffer.drain(sampleTimestamps,
+				sampleRawAcceleration, sampleLpfAcceleration);
+
+		if (length == 0)
+		{
+			return false;
+		}
+
+		int latest = (length - 1) * 3;
+
+		System.arraycopy(sampleRawAcceleration, latest,
+				latestRawAcceleration, 0, latestRawAcceleration.length);
+		System.arraycopy(sampleLpfAcceleration, latest,
+				latestLpfAcceleration, 0, latestLpfAcceleration.length);
 
-		plotData();
+		plotData(length);
 		updateTextViewOutputs();
-		logData();
+
+		return true;
 	}
 
 	/**
@@ -517,8 +680,9 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	 */
 	private void initFilters()
 	{
-		lpf = new LowPassFilter();
-		lpf.setTimeConstant(lpfTimeConstant);
+		filterPipeline = FilterPipeline.getInstance(this);
+
+		sampleBuffer = new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY);
 	}
 
 	/**
@@ -600,77 +764,258 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	}
 
 	/**
-	 * Begin logging data to an external .csv file.
+	 * Begin logging data to an external .csv or binary file.
 	 */
 	private void startDataLog()
 	{
 		if (logData == false)
 		{
+			LogFormat format = createLogFormat();
+
+			File file;
+
+			try
+			{
+				file = createLogFile(format.getFileExtension());
+			}
+			catch (IOException e)
+			{
+				Toast.makeText(this, e.toString(), Toast.LENGTH_SHORT).show();
+
+				return;
+			}
+
 			CharSequence text = "Logging Data";
 			int duration = Toast.LENGTH_SHORT;
 
 			Toast toast = Toast.makeText(this, text, duration);
 			toast.show();
 
-			String headers = "Generation" + ",";
+			// Long sessions get a summary so they can be browsed without
+			// reading the whole log.
+			final LogWriter writer = new LogWriter(file, format,
+					LOG_BUFFER_CAPACITY, this, LogFiles.getSummaryFile(file));
+			writer.start();
 
-			headers += "Timestamp" + ",";
+			// The sensor thread feeds the log writer.
+			sensorHandler.post(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					logWriter = writer;
+					logTimestamp = 0;
+				}
+			});
 
-			headers += this.plotAccelXAxisTitle + ",";
+			iconLogger.setVisibility(View.VISIBLE);
 
-			headers += this.plotAccelYAxisTitle + ",";
+			logData = true;
+		}
+		else
+		{
+			stopDataLog();
+		}
+	}
 
-			headers += this.plotAccelZAxisTitle + ",";
+	/**
+	 * Stop logging data. The log is written out on the log writer's thread.
+	 */
+	private void stopDataLog()
+	{
+		if (!captureData)
+		{
+			iconLogger.setVisibility(View.INVISIBLE);
+		}
 
-			headers += this.plotLPFAndDevXAxisTitle + ",";
+		logData = false;
 
-			headers += this.plotLPFAndDevYAxisTitle + ",";
+		// Close the log on the sensor thread so it is never closed in the
+		// middle of adding a sample.
+		sensorHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (logWriter != null)
+				{
+					logWriter.close();
+					logWriter = null;
+				}
+			}
+		});
+	}
 
-			headers += this.plotLPFAndDevZAxisTitle + ",";
+	/**
+	 * Begin waiting for impacts, each of which is written to its own file
+	 * with the samples around it. Nothing is written in between.
+	 */
+	private void startCapture()
+	{
+		if (captureData == false)
+		{
+			CharSequence text = "Capturing Impacts";
+			int duration = Toast.LENGTH_SHORT;
+
+			Toast toast = Toast.makeText(this, text, duration);
+			toast.show();
 
-			log = headers + "\n";
+			// Size the ring for the fastest rate the sensor can deliver, or
+			// the rate measured if that is faster, so the pre-trigger window
+			// is never cut short.
+			float frequency = Math.max(sensorHub.getMaxFrequency(),
+					sensorHub.getFrequency());
+
+			if (frequency <= 0)
+			{
+				frequency = CAPTURE_DEFAULT_FREQUENCY;
+			}
+
+			// The ring is allocated here rather than on the sensor thread.
+			final TriggeredCapture triggeredCapture = new TriggeredCapture(
+					(int) Math.ceil(capturePreTrigger * frequency
+							* CAPTURE_RATE_MARGIN),
+					(long) (capturePreTrigger * 1000000000L),
+					(long) (capturePostTrigger * 1000000000L),
+					captureThreshold, this);
+
+			// Every sample of a capture is logged, so its log has room for
+			// the pre-trigger window on top of the usual backlog.
+			captureLogCapacity = triggeredCapture.getCapacity()
+					+ LOG_BUFFER_CAPACITY;
+
+			sensorHandler.post(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					capture = triggeredCapture;
+				}
+			});
 
 			iconLogger.setVisibility(View.VISIBLE);
 
-			logData = true;
+			captureData = true;
+
+			prepareCaptureWriter();
 		}
 		else
+		{
+			stopCapture();
+		}
+	}
+
+	/**
+	 * Stop waiting for impacts. A capture in progress is cut short.
+	 */
+	private void stopCapture()
+	{
+		if (!logData)
 		{
 			iconLogger.setVisibility(View.INVISIBLE);
+		}
+
+		captureData = false;
+
+		sensorHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (capture != null)
+				{
+					capture.close();
+					capture = null;
+				}
+
+				if (captureWriter != null)
+				{
+					captureWriter.discard();
+					captureWriter = null;
+				}
+			}
+		});
+	}
 
-			logData = false;
-			writeLogToFile();
+	/**
+	 * Create and start the log of the next capture off the sensor thread and
+	 * hand it to the sensor thread, which keeps it until an impact.
+	 */
+	private void prepareCaptureWriter()
+	{
+		if (!captureData)
+		{
+			return;
 		}
+
+		LogFormat format = createLogFormat();
+
+		// The log is named when it triggers and only created once it has
+		// records, so the file here only gives it a directory.
+		final LogWriter writer = new LogWriter(new File(getLogDirectory(),
+				createLogName() + format.getFileExtension()), format,
+				captureLogCapacity, this);
+		writer.start();
+
+		sensorHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				// The capture may have been stopped, or already have a log
+				// if it was started again in the meantime.
+				if (capture != null && captureWriter == null)
+				{
+					captureWriter = writer;
+				}
+				else
+				{
+					writer.discard();
+				}
+			}
+		});
 	}
 
 	/**
 	 * Plot the output data in the UI.
+	 * 
+	 * @param length
+	 *            The number of samples drained since the last update.
 	 */
-	private void plotData()
+	private void plotData(int length)
 	{
-		dynamicPlot.setData(rawAcceleration[0], PLOT_ACCEL_X_AXIS_KEY);
-		dynamicPlot.setData(rawAcceleration[1], PLOT_ACCEL_Y_AXIS_KEY);
-		dynamicPlot.setData(rawAcceleration[2], PLOT_ACCEL_Z_AXIS_KEY);
+		for (int i = 0; i < length * 3; i += 3)
+		{
+			dynamicPlot.setData(sampleRawAcceleration[i],
+					PLOT_ACCEL_X_AXIS_KEY);
+			dynamicPlot.setData(sampleRawAcceleration[i + 1],
+					PLOT_ACCEL_Y_AXIS_KEY);
+			dynamicPlot.setData(sampleRawAcceleration[i + 2],
+					PLOT_ACCEL_Z_AXIS_KEY);
+
+			if (plotLPFReady)
+			{
+				dynamicPlot.setData(sampleLpfAcceleration[i],
+						PLOT_LPF_AND_DEV_X_AXIS_KEY);
+				dynamicPlot.setData(sampleLpfAcceleration[i + 1],
+						PLOT_LPF_AND_DEV_Y_AXIS_KEY);
+				dynamicPlot.setData(sampleLpfAcceleration[i + 2],
+						PLOT_LPF_AND_DEV_Z_AXIS_KEY);
+			}
+		}
 
-		gaugeAccelerationTilt.updateRotation(rawAcceleration);
+		gaugeAccelerationTilt.updateRotation(latestRawAcceleration);
 
-		gaugeAcceleration.updatePoint(rawAcceleration[0]
-				* SensorManager.GRAVITY_EARTH, rawAcceleration[1]
+		gaugeAcceleration.updatePoint(latestRawAcceleration[0]
+				* SensorManager.GRAVITY_EARTH, latestRawAcceleration[1]
 				* SensorManager.GRAVITY_EARTH, Color.parseColor("#33b5e5"));
 
 		if (plotLPFReady)
 		{
-			dynamicPlot
-					.setData(lpfAcceleration[0], PLOT_LPF_AND_DEV_X_AXIS_KEY);
-			dynamicPlot
-					.setData(lpfAcceleration[1], PLOT_LPF_AND_DEV_Y_AXIS_KEY);
-			dynamicPlot
-					.setData(lpfAcceleration[2], PLOT_LPF_AND_DEV_Z_AXIS_KEY);
-
-			gaugeLPFTilt.updateRotation(lpfAcceleration);
+			gaugeLPFTilt.updateRotation(latestLpfAcceleration);
 
-			gaugeLPFAcceleration.updatePoint(lpfAcceleration[0]
-					* SensorManager.GRAVITY_EARTH, lpfAcceleration[1]
+			gaugeLPFAcceleration.updatePoint(latestLpfAcceleration[0]
+					* SensorManager.GRAVITY_EARTH, latestLpfAcceleration[1]
 					* SensorManager.GRAVITY_EARTH, Color.parseColor("#33b5e5"));
 		}
 
@@ -681,49 +1026,62 @@ public class LinearAccelerationLPFActivity extends Activity implements
 	private void updateTextViewOutputs()
 	{
 		// Update the view with the new acceleration data
-		xAxis.setText(df.format(rawAcceleration[0]));
-		yAxis.setText(df.format(rawAcceleration[1]));
-		zAxis.setText(df.format(rawAcceleration[2]));
+		xAxis.setText(df.format(latestRawAcceleration[0]));
+		yAxis.setText(df.format(latestRawAcceleration[1]));
+		zAxis.setText(df.format(latestRawAcceleration[2]));
 	}
 
 	/**
-	 * Log output data to an external .csv file.
+	 * Create the layout to log the data in.
+	 * 
+	 * @return Returns the binary or .csv log format.
 	 */
-	private void logData()
+	private LogFormat createLogFormat()
 	{
-		if (logData)
+		if (logBinaryActive)
 		{
-			if (generation == 0)
-			{
-				logTime = System.currentTimeMillis();
-			}
-
-			log += System.getProperty("line.separator");
-			log += generation++ + ",";
-			log += System.currentTimeMillis() - logTime + ",";
+			return new BinaryLogFormat(Sensor.TYPE_ACCELEROMETER,
+					getSamplingPeriod(), lpfTimeConstant, invertAxisActive);
+		}
 
-			log += rawAcceleration[0] + ",";
-			log += rawAcceleration[1] + ",";
-			log += rawAcceleration[2] + ",";
+		return new CsvLogFormat();
+	}
 
-			log += lpfAcceleration[0] + ",";
-			log += lpfAcceleration[1] + ",";
-			log += lpfAcceleration[2] + ",";
-		}
+	/**
+	 * Create the file to log the data to.
+	 * 
+	 * @param extension
+	 *            The file extension of the log format.
+	 * @return Returns the log file.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	private File createLogFile(String extension) throws IOException
+	{
+		return LogFiles.reserve(getLogDirectory(), createLogName(), extension);
 	}
 
 	/**
-	 * Write the logged data out to a persisted file.
+	 * Name a log after the current time.
+	 * 
+	 * @return Returns the name of the log without its extension.
 	 */
-	private void writeLogToFile()
+	private String createLogName()
 	{
 		Calendar c = Calendar.getInstance();
-		String filename = "LPFLinearAcceleration-" + c.get(Calendar.YEAR) + "-"
+		return "LPFLinearAcceleration-" + c.get(Calendar.YEAR) + "-"
 				+ (c.get(Calendar.MONTH) + 1) + "-"
 				+ c.get(Calendar.DAY_OF_MONTH) + "-" + c.get(Calendar.HOUR)
-				+ "-" + c.get(Calendar.MINUTE) + "-" + c.get(Calendar.SECOND)
-				+ ".csv";
+				+ "-" + c.get(Calendar.MINUTE) + "-" + c.get(Calendar.SECOND);
+	}
 
+	/**
+	 * Get the directory the logs are written to, creating it if needed.
+	 * 
+	 * @return Returns the log directory.
+	 */
+	private File getLogDirectory()
+	{
 		File dir = new File(Environment.getExternalStorageDirectory()
 				+ File.separator + "LPFLinearAcceleration" + File.separator
 				+ "Logs");
@@ -732,52 +1090,57 @@ public class LinearAccelerationLPFActivity extends Activity implements
 			dir.mkdirs();
 		}
 
-		File file = new File(dir, filename);
+		return dir;
+	}
 
-		FileOutputStream fos;
-		byte[] data = log.getBytes();
-		try
+	/**
+	 * A callback from the log writer, on its own thread, once the log has
+	 * been written out.
+	 */
+	@Override
+	public void onLogClosed(final File file, final IOException exception)
+	{
+		handler.post(new Runnable()
 		{
-			fos = new FileOutputStream(file);
-			fos.write(data);
-			fos.flush();
-			fos.close();
+			@Override
+			public void run()
+			{
+				CharSequence text = "Log Saved";
 
-			CharSequence text = "Log Saved";
-			int duration = Toast.LENGTH_SHORT;
+				if (exception != null)
+				{
+					text = exception.toString();
+				}
 
-			Toast toast = Toast.makeText(this, text, duration);
-			toast.show();
-		}
-		catch (FileNotFoundException e)
-		{
-			CharSequence text = e.toString();
-			int duration = Toast.LENGTH_SHORT;
+				int duration = Toast.LENGTH_SHORT;
 
-			Toast toast = Toast.makeText(this, text, duration);
-			toast.show();
-		}
-		catch (IOException e)
-		{
-			// handle exception
-		}
-		finally
-		{
-			// Update the MediaStore so we can view the file without rebooting.
-			// Note that it appears that the ACTION_MEDIA_MOUNTED approach is
-			// now blocked for non-system apps on Android 4.4.
-			MediaScannerConnection.scanFile(this, new String[]
-			{ file.getPath() }, null,
-					new MediaScannerConnection.OnScanCompletedListener()
-					{
-						@Override
-						public void onScanCompleted(final String path,
-								final Uri uri)
+				Toast toast = Toast.makeText(
+						LinearAccelerationLPFActivity.this, text, duration);
+				toast.show();
+
+				File summaryFile = LogFiles.getSummaryFile(file);
+
+				String[] paths = summaryFile.exists() ? new String[]
+				{ file.getPath(), summaryFile.getPath() } : new String[]
+				{ file.getPath() };
+
+				// Update the MediaStore so we can view the file without
+				// rebooting. Note that it appears that the
+				// ACTION_MEDIA_MOUNTED approach is now blocked for non-system
+				// apps on Android 4.4.
+				MediaScannerConnection.scanFile(
+						LinearAccelerationLPFActivity.this, paths, null,
+						new MediaScannerConnection.OnScanCompletedListener()
 						{
+							@Override
+							public void onScanCompleted(final String path,
+									final Uri uri)
+							{
 
-						}
-					});
-		}
+							}
+						});
+			}
+		});
 	}
 
 	/**
@@ -806,7 +1169,17 @@ public class LinearAccelerationLPFActivity extends Activity implements
 
 		this.lpfTimeConstant = prefs.getFloat(PrefUtils.LPF_TIME_CONSTANT, 1);
 
-		lpf.setTimeConstant(lpfTimeConstant);
+		filterPipeline.setTimeConstant(lpfTimeConstant);
+
+		String filterType = prefs.getString(PrefUtils.FILTER_TYPE,
+				PrefUtils.FILTER_TYPE_SINGLE_POLE);
+
+		int butterworthOrder = prefs.getInt(PrefUtils.BUTTERWORTH_ORDER,
+				ButterworthFilter.DEFAULT_ORDER);
+
+		filterPipeline.setFilter(
+				filterType.equals(PrefUtils.FILTER_TYPE_BUTTERWORTH),
+				butterworthOrder);
 	}
 
 	/**
@@ -820,11 +1193,62 @@ public class LinearAccelerationLPFActivity extends Activity implements
 		this.frequencySelection = prefs.getString(
 				PrefUtils.SENSOR_FREQUENCY_PREF,
 				PrefUtils.SENSOR_FREQUENCY_FAST);
+
+		this.reportLatency = prefs.getInt(PrefUtils.SENSOR_REPORT_LATENCY, 0);
+
+		this.samplingPeriod = prefs.getInt(PrefUtils.SENSOR_SAMPLING_PERIOD,
+				PrefUtils.DEFAULT_SAMPLING_PERIOD);
+
+		this.logFullRateActive = prefs.getBoolean(
+				PrefUtils.LOG_FULL_RATE_ACTIVE, false);
+
+		this.logBinaryActive = prefs.getBoolean(PrefUtils.LOG_BINARY_ACTIVE,
+				false);
+
+		this.captureThreshold = prefs.getFloat(PrefUtils.CAPTURE_THRESHOLD,
+				PrefUtils.DEFAULT_CAPTURE_THRESHOLD);
+
+		this.capturePreTrigger = prefs.getFloat(
+				PrefUtils.CAPTURE_PRE_TRIGGER,
+				PrefUtils.DEFAULT_CAPTURE_PRE_TRIGGER);
+
+		this.capturePostTrigger = prefs.getFloat(
+				PrefUtils.CAPTURE_POST_TRIGGER,
+				PrefUtils.DEFAULT_CAPTURE_POST_TRIGGER);
+	}
+
+	/**
+	 * Get the sampling period requested from the sensor, for the header of
+	 * binary logs.
+	 * 
+	 * @return Returns the sampling period in microseconds, or zero for as
+	 *         fast as possible.
+	 */
+	private int getSamplingPeriod()
+	{
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_SLOW))
+		{
+			// SENSOR_DELAY_NORMAL
+			return 200000;
+		}
+
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_MEDIUM))
+		{
+			// SENSOR_DELAY_GAME
+			return 20000;
+		}
+
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
+		{
+			return samplingPeriod;
+		}
+
+		return 0;
 	}
 
 	/**
 	 * Set the sensor delay based on user preferences. 0 = slow, 1 = medium, 2 =
-	 * fast.
+	 * fast, 3 = the custom sampling period.
 	 * 
 	 * @param position
 	 *            The desired sensor delay.
@@ -834,46 +1258,28 @@ public class LinearAccelerationLPFActivity extends Activity implements
 		switch (position)
 		{
 		case 0:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_NORMAL);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_NORMAL);
 			break;
 		case 1:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_GAME);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_GAME);
 			break;
 		case 2:
-
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_FASTEST);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_FASTEST);
+			break;
+		case 3:
+			sensorHub.setSensorDelay(samplingPeriod);
 			break;
 		}
-		
-		lpf.reset();
 	}
 
 	/**
 	 * Updates the sensor delay based on the user preference. 0 = slow, 1 =
-	 * medium, 2 = fast.
+	 * medium, 2 = fast, 3 = the custom sampling period.
 	 */
 	private void updateSensorDelay()
 	{
+		sensorHub.setMaxReportLatency(reportLatency * 1000);
+
 		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_SLOW))
 		{
 			setSensorDelay(0);
@@ -888,5 +1294,10 @@ public class LinearAccelerationLPFActivity extends Activity implements
 		{
 			setSensorDelay(2);
 		}
+
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
+		{
+			setSensorDelay(3);
+		}
 	}
 }
@@ -6,14 +6,18 @@ import android.app.Activity;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.Window;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.Spinner;
 
 import com.kircherelectronics.lowpasslinearacceleration.R;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthDesign;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthFilter;
 import com.kircherelectronics.lowpasslinearacceleration.plot.PlotPrefCallback;
 import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
 
@@ -44,10 +48,15 @@ import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
  */
 public class FilterSettingsDialog extends Dialog
 {
+	private static final String tag = FilterSettingsDialog.class
+			.getSimpleName();
+
 	private boolean invertAxisActive = false;
 
 	private float lpfTimeConstant;
 
+	private int butterworthOrder;
+
 	private Button buttonAccept;
 
 	private CheckBox checkBoxInvertAxisActive;
@@ -55,6 +64,11 @@ public class FilterSettingsDialog extends Dialog
 	private DecimalFormat df;
 
 	private EditText editTextLpfTimeConstant;
+	private EditText editTextButterworthOrder;
+
+	private Spinner spinnerFilterType;
+
+	private String filterType;
 
 	private final PlotPrefCallback callback;
 
@@ -97,6 +111,10 @@ public class FilterSettingsDialog extends Dialog
 				lpfTimeConstant = Float.valueOf(editTextLpfTimeConstant
 						.getText().toString());
 
+				filterType = spinnerFilterType.getSelectedItem().toString();
+
+				readButterworthOrder();
+
 				writePrefs();
 				
 				FilterSettingsDialog.this.callback.checkPlotPrefs();
@@ -113,10 +131,28 @@ public class FilterSettingsDialog extends Dialog
 		editTextLpfTimeConstant = (EditText) settingsView
 				.findViewById(R.id.edit_text_lpf_time_constant);
 
+		editTextButterworthOrder = (EditText) settingsView
+				.findViewById(R.id.edit_text_butterworth_order);
+
+		spinnerFilterType = (Spinner) settingsView
+				.findViewById(R.id.spinner_filter_type);
+
 		checkBoxInvertAxisActive.setChecked(this.invertAxisActive);
 
 		editTextLpfTimeConstant.setText(String.valueOf(this.lpfTimeConstant));
 
+		editTextButterworthOrder
+				.setText(String.valueOf(this.butterworthOrder));
+
+		if (filterType.equals(PrefUtils.FILTER_TYPE_BUTTERWORTH))
+		{
+			spinnerFilterType.setSelection(1);
+		}
+		else
+		{
+			spinnerFilterType.setSelection(0);
+		}
+
 		this.setContentView(settingsView);
 	}
 
@@ -140,7 +176,31 @@ public class FilterSettingsDialog extends Dialog
 				PrefUtils.INVERT_AXIS_ACTIVE, false);
 		this.lpfTimeConstant = prefs.getFloat(PrefUtils.LPF_TIME_CONSTANT, 1);
 
+		this.filterType = prefs.getString(PrefUtils.FILTER_TYPE,
+				PrefUtils.FILTER_TYPE_SINGLE_POLE);
+
+		this.butterworthOrder = prefs.getInt(PrefUtils.BUTTERWORTH_ORDER,
+				ButterworthFilter.DEFAULT_ORDER);
+	}
+
+	/**
+	 * Read the Butterworth order the user entered, keeping the previous value
+	 * if it isn't a valid number.
+	 */
+	private void readButterworthOrder()
+	{
+		try
+		{
+			int order = Integer.parseInt(editTextButterworthOrder.getText()
+					.toString());
 
+			butterworthOrder = Math.max(1,
+					Math.min(ButterworthDesign.MAX_ORDER, order));
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid Butterworth order", e);
+		}
 	}
 
 	/**
@@ -157,6 +217,8 @@ public class FilterSettingsDialog extends Dialog
 		editor.putBoolean(PrefUtils.INVERT_AXIS_ACTIVE,
 				this.invertAxisActive);
 		editor.putFloat(PrefUtils.LPF_TIME_CONSTANT, this.lpfTimeConstant);
+		editor.putString(PrefUtils.FILTER_TYPE, this.filterType);
+		editor.putInt(PrefUtils.BUTTERWORTH_ORDER, this.butterworthOrder);
 
 		editor.commit();
 	}
@@ -6,9 +6,6 @@ import android.app.Activity;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Handler;
 import android.util.Log;
@@ -18,6 +15,10 @@ import android.view.Window;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
+import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 
@@ -25,6 +26,7 @@ import com.kircherelectronics.lowpasslinearacceleration.LinearAccelerationLPFAct
 import com.kircherelectronics.lowpasslinearacceleration.R;
 import com.kircherelectronics.lowpasslinearacceleration.plot.PlotPrefCallback;
 import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
+import com.kircherelectronics.lowpasslinearacceleration.sensor.SensorHub;
 
 /*
  * Low-Pass Linear Acceleration
@@ -45,32 +47,53 @@ import com.kircherelectronics.lowpasslinearacceleration.prefs.PrefUtils;
  */
 
 public class SensorSettingsDialog extends Dialog implements
-		SensorEventListener, OnItemSelectedListener, Runnable
+		OnItemSelectedListener, Runnable
 {
 	private static final String tag = SensorSettingsDialog.class
 			.getSimpleName();
 
-	private float timestamp = System.nanoTime();
-	private float startTime = 0;
-	private float dt = 0;
-	private float sensorHz = 0;
+	private boolean logFullRateActive = false;
+	private boolean logBinaryActive = false;
 
-	private int count = 0;
+	// How long the sensor may batch samples, in ms
+	private int reportLatency = 0;
+
+	// The custom sampling period, in microseconds
+	private int samplingPeriod = PrefUtils.DEFAULT_SAMPLING_PERIOD;
+
+	// The linear acceleration that triggers a capture, in g
+	private float captureThreshold = PrefUtils.DEFAULT_CAPTURE_THRESHOLD;
+
+	// How long before and after the trigger is captured, in seconds
+	private float capturePreTrigger = PrefUtils.DEFAULT_CAPTURE_PRE_TRIGGER;
+	private float capturePostTrigger = PrefUtils.DEFAULT_CAPTURE_POST_TRIGGER;
 
 	private Button buttonAccept;
 
+	private CheckBox checkBoxLogFullRateActive;
+	private CheckBox checkBoxLogBinaryActive;
+
 	private DecimalFormat df;
 
+	private EditText editTextReportLatency;
+	private EditText editTextSamplingPeriod;
+	private EditText editTextCaptureThreshold;
+	private EditText editTextCapturePreTrigger;
+	private EditText editTextCapturePostTrigger;
+
 	private final PlotPrefCallback callback;
 
-	// Sensor manager to access the accelerometer sensor
-	private SensorManager sensorManager;
+	// Shares the accelerometer and measures its delivery rate
+	private SensorHub sensorHub;
 
 	private String frequencySelection;
 
 	private Spinner frequencySpinner;
 
 	private TextView sensorFrequencyTextView;
+	private TextView sensorJitterTextView;
+	private TextView sensorDroppedTextView;
+	private TextView samplingPeriodTextView;
 
 	// Handler for the UI plots so everything plots smoothly
 	private Handler handler;
@@ -85,9 +108,7 @@ public class SensorSettingsDialog extends Dialog implements
 
 		df = new DecimalFormat("#.##");
 
-		// Get the sensor manager ready
-		sensorManager = (SensorManager) this.getContext()
-				.getSystemService(Context.SENSOR_SERVICE);
+		sensorHub = SensorHub.getInstance(context);
 
 		LayoutInflater inflater = getLayoutInflater();
 
@@ -97,11 +118,71 @@ public class SensorSettingsDialog extends Dialog implements
 		sensorFrequencyTextView = (TextView) settingsView
 				.findViewById(R.id.value_sensor_frequency);
 
+		sensorJitterTextView = (TextView) settingsView
+				.findViewById(R.id.value_sensor_jitter);
+
+		sensorDroppedTextView = (TextView) settingsView
+				.findViewById(R.id.value_sensor_dropped);
+
+		samplingPeriodTextView = (TextView) settingsView
+				.findViewById(R.id.value_sampling_period);
+
 		frequencySpinner = (Spinner) settingsView
 				.findViewById(R.id.sensor_frequency_spinner);
 
 		frequencySpinner.setOnItemSelectedListener(this);
 
+		checkBoxLogFullRateActive = (CheckBox) settingsView
+				.findViewById(R.id.check_box_log_full_rate_active);
+
+		checkBoxLogFullRateActive
+				.setOnCheckedChangeListener(new OnCheckedChangeListener()
+				{
+					@Override
+					public void onCheckedChanged(CompoundButton buttonView,
+							boolean isChecked)
+					{
+						logFullRateActive = isChecked;
+
+						writeSensorPrefs();
+
+						SensorSettingsDialog.this.callback.checkPlotPrefs();
+					}
+				});
+
+		checkBoxLogBinaryActive = (CheckBox) settingsView
+				.findViewById(R.id.check_box_log_binary_active);
+
+		checkBoxLogBinaryActive
+				.setOnCheckedChangeListener(new OnCheckedChangeListener()
+				{
+					@Override
+					public void onCheckedChanged(CompoundButton buttonView,
+							boolean isChecked)
+					{
+						logBinaryActive = isChecked;
+
+						writeSensorPrefs();
+
+						SensorSettingsDialog.this.callback.checkPlotPrefs();
+					}
+				});
+
+		editTextReportLatency = (EditText) settingsView
+				.findViewById(R.id.edit_text_report_latency);
+
+		editTextSamplingPeriod = (EditText) settingsView
+				.findViewById(R.id.edit_text_sampling_period);
+
+		editTextCaptureThreshold = (EditText) settingsView
+				.findViewById(R.id.edit_text_capture_threshold);
+
+		editTextCapturePreTrigger = (EditText) settingsView
+				.findViewById(R.id.edit_text_capture_pre_trigger);
+
+		editTextCapturePostTrigger = (EditText) settingsView
+				.findViewById(R.id.edit_text_capture_post_trigger);
+
 		buttonAccept = (Button) settingsView.findViewById(R.id.button_accept);
 
 		buttonAccept.setOnClickListener(new View.OnClickListener()
@@ -109,6 +190,14 @@ public class SensorSettingsDialog extends Dialog implements
 			@Override
 			public void onClick(View v)
 			{
+				readReportLatency();
+				readSamplingPeriod();
+				readCaptureSettings();
+
+				writeSensorPrefs();
+
+				SensorSettingsDialog.this.callback.checkPlotPrefs();
+
 				SensorSettingsDialog.this.dismiss();
 			}
 		});
@@ -121,7 +210,9 @@ public class SensorSettingsDialog extends Dialog implements
 	{
 		super.onStop();
 
-		sensorManager.unregisterListener(this);
+		readReportLatency();
+		readSamplingPeriod();
+		readCaptureSettings();
 		writeSensorPrefs();
 		handler.removeCallbacks(this);
 
@@ -134,6 +225,16 @@ public class SensorSettingsDialog extends Dialog implements
 
 		readSensorPrefs();
 
+		checkBoxLogFullRateActive.setChecked(logFullRateActive);
+		checkBoxLogBinaryActive.setChecked(logBinaryActive);
+
+		editTextReportLatency.setText(String.valueOf(reportLatency));
+		editTextSamplingPeriod.setText(String.valueOf(samplingPeriod));
+		editTextCaptureThreshold.setText(String.valueOf(captureThreshold));
+		editTextCapturePreTrigger.setText(String.valueOf(capturePreTrigger));
+		editTextCapturePostTrigger
+				.setText(String.valueOf(capturePostTrigger));
+
 		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_SLOW))
 		{
 			frequencySpinner.setSelection(0);
@@ -152,6 +253,12 @@ public class SensorSettingsDialog extends Dialog implements
 			setSensorDelay(2);
 		}
 
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
+		{
+			frequencySpinner.setSelection(3);
+			setSensorDelay(3);
+		}
+
 		handler = new Handler();
 
 		handler.post(this);
@@ -168,6 +275,116 @@ public class SensorSettingsDialog extends Dialog implements
 		this.frequencySelection = prefs.getString(
 				PrefUtils.SENSOR_FREQUENCY_PREF,
 				PrefUtils.SENSOR_FREQUENCY_FAST);
+
+		this.logFullRateActive = prefs.getBoolean(
+				PrefUtils.LOG_FULL_RATE_ACTIVE, false);
+
+		this.logBinaryActive = prefs.getBoolean(PrefUtils.LOG_BINARY_ACTIVE,
+				false);
+
+		this.reportLatency = prefs.getInt(PrefUtils.SENSOR_REPORT_LATENCY, 0);
+
+		this.samplingPeriod = prefs.getInt(PrefUtils.SENSOR_SAMPLING_PERIOD,
+				PrefUtils.DEFAULT_SAMPLING_PERIOD);
+
+		this.captureThreshold = prefs.getFloat(PrefUtils.CAPTURE_THRESHOLD,
+				PrefUtils.DEFAULT_CAPTURE_THRESHOLD);
+
+		this.capturePreTrigger = prefs.getFloat(
+				PrefUtils.CAPTURE_PRE_TRIGGER,
+				PrefUtils.DEFAULT_CAPTURE_PRE_TRIGGER);
+
+		this.capturePostTrigger = prefs.getFloat(
+				PrefUtils.CAPTURE_POST_TRIGGER,
+				PrefUtils.DEFAULT_CAPTURE_POST_TRIGGER);
+	}
+
+	/**
+	 * Read the report latency the user entered, keeping the previous value if
+	 * it isn't a valid number.
+	 */
+	private void readReportLatency()
+	{
+		try
+		{
+			reportLatency = Math.max(0, Integer.parseInt(editTextReportLatency
+					.getText().toString()));
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid report latency", e);
+		}
+	}
+
+	/**
+	 * Read the sampling period the user entered, keeping the previous value
+	 * if it isn't a valid number. The sensor is registered again with the new
+	 * period if the custom frequency is selected.
+	 */
+	private void readSamplingPeriod()
+	{
+		try
+		{
+			// Periods below the minimum would be taken for the
+			// SensorManager delay constants.
+			samplingPeriod = Math.max(PrefUtils.MIN_SAMPLING_PERIOD,
+					Integer.parseInt(editTextSamplingPeriod.getText()
+							.toString()));
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid sampling period", e);
+		}
+
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
+		{
+			sensorHub.setSensorDelay(samplingPeriod);
+		}
+	}
+
+	/**
+	 * Read the capture settings the user entered, keeping the previous values
+	 * if they aren't valid numbers. The capture windows are limited so the
+	 * pre-trigger ring stays small.
+	 */
+	private void readCaptureSettings()
+	{
+		try
+		{
+			float threshold = Float.parseFloat(editTextCaptureThreshold
+					.getText().toString());
+
+			if (threshold > 0)
+			{
+				captureThreshold = threshold;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid capture threshold", e);
+		}
+
+		try
+		{
+			capturePreTrigger = clampCaptureTime(Float
+					.parseFloat(editTextCapturePreTrigger.getText()
+							.toString()));
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid pre-trigger time", e);
+		}
+
+		try
+		{
+			capturePostTrigger = clampCaptureTime(Float
+					.parseFloat(editTextCapturePostTrigger.getText()
+							.toString()));
+		}
+		catch (NumberFormatException e)
+		{
+			Log.w(tag, "Invalid post-trigger time", e);
+		}
 	}
 
 	/**
@@ -199,34 +416,29 @@ public class SensorSettingsDialog extends Dialog implements
 					PrefUtils.SENSOR_FREQUENCY_FAST);
 		}
 
-		editor.commit();
-	}
-
-	@Override
-	public void onSensorChanged(SensorEvent event)
-	{
-		// Initialize the start time.
-		if (startTime == 0)
+		if (frequencySelection.equals(PrefUtils.SENSOR_FREQUENCY_CUSTOM))
 		{
-			startTime = System.nanoTime();
+			editor.putString(PrefUtils.SENSOR_FREQUENCY_PREF,
+					PrefUtils.SENSOR_FREQUENCY_CUSTOM);
 		}
 
-		timestamp = System.nanoTime();
+		editor.putBoolean(PrefUtils.LOG_FULL_RATE_ACTIVE,
+				this.logFullRateActive);
 
-		// Find the sample period (between updates) and convert from
-		// nanoseconds to seconds. Note that the sensor delivery rates can
-		// individually vary by a relatively large time frame, so we use an
-		// averaging technique with the number of sensor updates to
-		// determine the delivery rate.
-		dt = 1 / (count++ / ((timestamp - startTime) / 1000000000.0f));
+		editor.putBoolean(PrefUtils.LOG_BINARY_ACTIVE, this.logBinaryActive);
 
-		sensorHz = 1 / dt;
-	}
+		editor.putInt(PrefUtils.SENSOR_REPORT_LATENCY, this.reportLatency);
 
-	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy)
-	{
+		editor.putInt(PrefUtils.SENSOR_SAMPLING_PERIOD, this.samplingPeriod);
+
+		editor.putFloat(PrefUtils.CAPTURE_THRESHOLD, this.captureThreshold);
+
+		editor.putFloat(PrefUtils.CAPTURE_PRE_TRIGGER, this.capturePreTrigger);
 
+		editor.putFloat(PrefUtils.CAPTURE_POST_TRIGGER,
+				this.capturePostTrigger);
+
+		editor.commit();
 	}
 
 	@Override
@@ -251,44 +463,28 @@ public class SensorSettingsDialog extends Dialog implements
 
 			this.frequencySelection = PrefUtils.SENSOR_FREQUENCY_SLOW;
 
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_NORMAL);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_NORMAL);
 			break;
 		case 1:
 
 			this.frequencySelection = PrefUtils.SENSOR_FREQUENCY_MEDIUM;
 
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_GAME);
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_GAME);
 			break;
 		case 2:
 
 			this.frequencySelection = PrefUtils.SENSOR_FREQUENCY_FAST;
 
-			sensorManager.unregisterListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
+			sensorHub.setSensorDelay(SensorManager.SENSOR_DELAY_FASTEST);
+			break;
+		case 3:
+
+			this.frequencySelection = PrefUtils.SENSOR_FREQUENCY_CUSTOM;
 
-			// Register for sensor updates.
-			sensorManager.registerListener(this,
-					sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-					SensorManager.SENSOR_DELAY_FASTEST);
+			sensorHub.setSensorDelay(samplingPeriod);
 			break;
 
 		}
-
-		// Reset the frequency counter
-		count = 0;
-		startTime = 0;
 	}
 
 	@Override
@@ -302,6 +498,35 @@ public class SensorSettingsDialog extends Dialog implements
 	public void run()
 	{
 		handler.postDelayed(this, 100);
-		sensorFrequencyTextView.setText(df.format(sensorHz));
+
+		float frequency = sensorHub.getFrequency();
+
+		sensorFrequencyTextView.setText(df.format(frequency));
+
+		// Show the period actually achieved next to the requested one.
+		if (frequency > 0)
+		{
+			samplingPeriodTextView.setText(String.valueOf(Math
+					.round(1000000 / frequency)));
+
+			// The 99th percentile is shown as its distance from the mean.
+			float jitter = sensorHub.getJitter() * 1000000;
+			float percentile = (sensorHub.getPeriodPercentile() - 1 / frequency)
+					* 1000000;
+
+			sensorJitterTextView.setText(df.format(jitter) + "/"
+					+ df.format(percentile));
+		}
+
+		sensorDroppedTextView.setText(sensorHub.getDropped() + "/"
+				+ sensorHub.getDuplicates());
+	}
+
+	/**
+	 * Limit a capture window to the supported range.
+	 */
+	private static float clampCaptureTime(float time)
+	{
+		return Math.max(0, Math.min(PrefUtils.MAX_CAPTURE_TIME, time));
 	}
 }
@@ -0,0 +1,46 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface that allows the filter pipeline to hand the filtered
+ * accelerometer samples to its subscribers. The callback is made on the
+ * sensor thread.
+ *
+ * @author Kaleb
+ *
+ */
+public interface FilterConsumer
+{
+	/**
+	 * New samples have been filtered, oldest first. The arrays are reused for
+	 * the next block, so copy out anything that must be kept.
+	 *
+	 * @param timestamps
+	 *            The times of the samples in nanoseconds.
+	 * @param acceleration
+	 *            The interleaved xyz acceleration in m/s^2.
+	 * @param linearAcceleration
+	 *            The interleaved xyz linear acceleration in m/s^2.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public void onFilteredSamples(long[] timestamps, float[] acceleration,
+			float[] linearAcceleration, int length);
+}
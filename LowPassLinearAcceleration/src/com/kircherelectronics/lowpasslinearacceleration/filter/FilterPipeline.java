@@ -0,0 +1,317 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+import android.content.Context;
+import android.os.Handler;
+
+import com.kircherelectronics.lowpasslinearacceleration.sensor.SensorConsumer;
+import com.kircherelectronics.lowpasslinearacceleration.sensor.SensorHub;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Owns the low-pass filters of the process. The pipeline takes the samples
+ * from the sensor hub, filters them once and hands the raw and linear
+ * acceleration to the subscribed consumers on the sensor thread. Because the
+ * filter outlives the activities, rotating the screen or switching between
+ * the plot and vector views carries on with the converged gravity estimate
+ * instead of warming up again.
+ *
+ * Either the single pole LowPassFilter or a ButterworthFilter separates
+ * gravity. Switching between them hands the gravity estimate over, so the
+ * output doesn't jump back to a cold start.
+ *
+ * The filter works in m/s^2 without any axis inversion. The filter is linear,
+ * so consumers can scale or invert its output to suit themselves.
+ *
+ * The estimate is only kept in memory. A new process warms up again, and so
+ * does the filter when the samples resume after a gap of more than a few time
+ * constants, or with a timestamp from before the last sample, since the old
+ * estimate no longer says anything about gravity.
+ *
+ * Subscribe, unsubscribe and configure the filters from the UI thread.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class FilterPipeline implements SensorConsumer
+{
+	private static final String tag = FilterPipeline.class.getSimpleName();
+
+	// How many time constants the samples can stop for before the estimate
+	// is dropped
+	public final static float STALE_TIME_CONSTANTS = 3;
+
+	// The shortest gap that drops the estimate, in nanoseconds, so slow
+	// sample rates with a short time constant don't reset every block
+	public final static long MIN_STALE_TIME = 1000000000L;
+
+	private static FilterPipeline instance;
+
+	// The filtered block handed to the consumers
+	private final float[] linearAcceleration = new float[SensorHub.BLOCK_SIZE
+			* 3];
+
+	// Replaced rather than modified, so the sensor thread can walk it without
+	// locking or allocating.
+	private volatile FilterConsumer[] consumers = new FilterConsumer[0];
+
+	// Owned by the sensor thread
+	private final LowPassFilter lpf;
+
+	// Owned by the sensor thread
+	private final ButterworthFilter butterworth = new ButterworthFilter();
+
+	// True if the Butterworth filter is used, owned by the sensor thread
+	private boolean butterworthActive = false;
+
+	// The time constant in seconds, owned by the sensor thread
+	private float timeConstant = 1;
+
+	// The time of the last sample filtered, 0 for none, owned by the sensor
+	// thread
+	private long lastTimestamp = 0;
+
+	private final Handler sensorHandler;
+
+	private final SensorHub sensorHub;
+
+	/**
+	 * Get the filter pipeline of the process.
+	 *
+	 * @param context
+	 *            Any context of the application.
+	 * @return Returns the filter pipeline.
+	 */
+	public static synchronized FilterPipeline getInstance(Context context)
+	{
+		if (instance == null)
+		{
+			instance = new FilterPipeline(context.getApplicationContext());
+		}
+
+		return instance;
+	}
+
+	private FilterPipeline(Context context)
+	{
+		sensorHub = SensorHub.getInstance(context);
+
+		sensorHandler = sensorHub.getSensorHandler();
+
+		lpf = new LowPassFilter();
+
+		// Seed gravity from the first samples.
+		lpf.setWarmStart(LowPassFilter.DEFAULT_WARM_START);
+	}
+
+	/**
+	 * Set the time constant of the filter.
+	 *
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 */
+	public void setTimeConstant(final float timeConstant)
+	{
+		// The filter belongs to the sensor thread.
+		sensorHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				FilterPipeline.this.timeConstant = timeConstant;
+
+				lpf.setTimeConstant(timeConstant);
+				butterworth.setTimeConstant(timeConstant);
+			}
+		});
+	}
+
+	/**
+	 * Choose the filter that separates gravity.
+	 *
+	 * @param butterworthActive
+	 *            True to use a Butterworth filter, false for the single pole
+	 *            filter.
+	 * @param order
+	 *            The order of the Butterworth filter.
+	 */
+	public void setFilter(final boolean butterworthActive, final int order)
+	{
+		sensorHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				butterworth.setOrder(order);
+
+				if (butterworthActive == FilterPipeline.this.butterworthActive)
+				{
+					return;
+				}
+
+				// Carry the gravity estimate over to the new filter, unless
+				// the old one has none yet and the new one should warm up.
+				if (butterworthActive)
+				{
+					if (lpf.hasGravity())
+					{
+						butterworth.setGravity(lpf.getGravity());
+					}
+				}
+				else if (butterworth.hasGravity())
+				{
+					lpf.setGravity(butterworth.getGravity());
+				}
+
+				FilterPipeline.this.butterworthActive = butterworthActive;
+			}
+		});
+	}
+
+	/**
+	 * Start handing filtered samples to a consumer.
+	 *
+	 * @param consumer
+	 *            The consumer.
+	 */
+	public synchronized void subscribe(FilterConsumer consumer)
+	{
+		FilterConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			if (consumers[i] == consumer)
+			{
+				return;
+			}
+		}
+
+		FilterConsumer[] subscribed = new FilterConsumer[consumers.length + 1];
+
+		System.arraycopy(consumers, 0, subscribed, 0, consumers.length);
+
+		subscribed[consumers.length] = consumer;
+
+		this.consumers = subscribed;
+
+		if (consumers.length == 0)
+		{
+			sensorHub.subscribe(this);
+		}
+	}
+
+	/**
+	 * Stop handing filtered samples to a consumer. A block that is being
+	 * handed out may still reach the consumer.
+	 *
+	 * @param consumer
+	 *            The consumer.
+	 */
+	public synchronized void unsubscribe(FilterConsumer consumer)
+	{
+		FilterConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			if (consumers[i] == consumer)
+			{
+				FilterConsumer[] subscribed = new FilterConsumer[consumers.length
+						- 1];
+
+				System.arraycopy(consumers, 0, subscribed, 0, i);
+				System.arraycopy(consumers, i + 1, subscribed, i,
+						subscribed.length - i);
+
+				this.consumers = subscribed;
+
+				if (subscribed.length == 0)
+				{
+					sensorHub.unsubscribe(this);
+				}
+
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void onSensorSamples(long[] timestamps, float[] values, int length)
+	{
+		float frequency = sensorHub.getFrequency();
+
+		if (lastTimestamp != 0 && isStale(timestamps[0] - lastTimestamp))
+		{
+			// Warm up again rather than carry on from an old estimate.
+			lpf.reset();
+			butterworth.reset();
+		}
+
+		lastTimestamp = timestamps[length - 1];
+
+		// Derive the filter coefficient from the rate actually achieved. The
+		// rate isn't known for the first samples after the sensor is
+		// registered again, so keep the last one until then.
+		// A burst from a batched sensor is filtered in one pass, each sample
+		// with its own timestamp.
+		if (butterworthActive)
+		{
+			if (frequency > 0)
+			{
+				butterworth.setSampleRate(frequency);
+			}
+
+			butterworth.addSamples(values, timestamps, length,
+					linearAcceleration);
+		}
+		else
+		{
+			if (frequency > 0)
+			{
+				lpf.setSampleRate(frequency);
+			}
+
+			lpf.addSamples(values, timestamps, length, linearAcceleration);
+		}
+
+		FilterConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			consumers[i].onFilteredSamples(timestamps, values,
+					linearAcceleration, length);
+		}
+	}
+
+	/**
+	 * Find out if the estimate is too old to carry on from.
+	 *
+	 * @param gap
+	 *            The time from the last sample filtered to the next one, in
+	 *            nanoseconds.
+	 * @return Returns true if the samples stopped for more than a few time
+	 *         constants, or went back in time. A repeated timestamp isn't
+	 *         stale.
+	 */
+	private boolean isStale(long gap)
+	{
+		return gap < 0
+				|| gap > Math.max(MIN_STALE_TIME, (long) (STALE_TIME_CONSTANTS
+						* timeConstant * 1000000000L));
+	}
+}
@@ -8,6 +8,7 @@ import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
 import android.graphics.RadialGradient;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.Typeface;
@@ -113,9 +114,14 @@ public final class GaugeRotation extends View
 	// Keep static bitmaps of the gauge so we only have to redraw if we have to
 	// Static bitmap for the bezel of the gauge
 	private Bitmap bezelBitmap;
-	// Static bitmap for the face of the gauge
+	// Static bitmap for the earth layer of the gauge face, the sky is left
+	// transparent
 	private Bitmap faceBitmap;
 
+	// The part of the face bitmap below the horizon, in pixels
+	private Rect faceSrcRect;
+	private RectF faceDstRect;
+
 	// Keep track of the rotation of the device
 	private float[] rotation = new float[3];
 
@@ -338,6 +344,9 @@ public final class GaugeRotation extends View
 
 		backgroundPaint = new Paint();
 		backgroundPaint.setFilterBitmap(true);
+
+		faceSrcRect = new Rect();
+		faceDstRect = new RectF();
 	}
 
 	@Override
@@ -399,51 +408,38 @@ public final class GaugeRotation extends View
 	}
 
 	/**
-	 * Draw the gauge face.
+	 * Draw the gauge face. Only the part of the cached earth layer below the
+	 * horizon is drawn, rotated by the roll angle, so nothing is allocated.
 	 * 
 	 * @param canvas
 	 */
 	private void drawFace(Canvas canvas)
 	{
-		// free the old bitmap
-		if (faceBitmap != null)
+		if (faceBitmap == null)
 		{
-			faceBitmap.recycle();
-		}
-
-		faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
-				Bitmap.Config.ARGB_8888);
-
-		Canvas faceCanvas = new Canvas(faceBitmap);
-		float scale = (float) getWidth();
-		faceCanvas.scale(scale, scale);
-
-		skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
-				rimRect.bottom);
+			Log.w(tag, "Face not created");
 
-		faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
+			return;
+		}
 
-		int[] allpixels = new int[faceBitmap.getHeight()
-				* faceBitmap.getWidth()];
+		int width = faceBitmap.getWidth();
+		int height = faceBitmap.getHeight();
 
-		faceBitmap.getPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-				faceBitmap.getWidth(), faceBitmap.getHeight());
+		// The horizon moves with the pitch
+		int horizon = (int) ((height / 2) - ((height / 2.5) * -rotation[1]));
 
-		for (int i = 0; i < faceBitmap.getHeight() * faceBitmap.getWidth(); i++)
+		if (horizon > height)
 		{
-			allpixels[i] = Color.TRANSPARENT;
+			horizon = height;
 		}
 
-		int height = (int) ((faceBitmap.getHeight() / 2) - ((faceBitmap
-				.getHeight() / 2.5) * -rotation[1]));
-
-		if (height > faceBitmap.getHeight())
+		if (horizon < 0)
 		{
-			height = faceBitmap.getHeight();
+			horizon = 0;
 		}
 
-		faceBitmap.setPixels(allpixels, 0, faceBitmap.getWidth(), 0, 0,
-				faceBitmap.getWidth(), height);
+		faceSrcRect.set(0, horizon, width, height);
+		faceDstRect.set(0, horizon, width, height);
 
 		float x = rotation[0];
 
@@ -462,10 +458,10 @@ public final class GaugeRotation extends View
 		float angle = (float) (Math.asin(x) * 57.2957795);
 
 		canvas.save(Canvas.MATRIX_SAVE_FLAG);
-		canvas.rotate(-angle, faceBitmap.getWidth() / 2f,
-				faceBitmap.getHeight() / 2f);
+		canvas.rotate(-angle, width / 2f, height / 2f);
 
-		canvas.drawBitmap(faceBitmap, 0, 0, backgroundPaint);
+		canvas.drawBitmap(faceBitmap, faceSrcRect, faceDstRect,
+				backgroundPaint);
 		canvas.restore();
 	}
 
@@ -492,6 +488,7 @@ public final class GaugeRotation extends View
 		Log.d(tag, "Size changed to " + w + "x" + h);
 
 		regenerateBezel();
+		regenerateFace();
 	}
 
 	/**
@@ -516,6 +513,30 @@ public final class GaugeRotation extends View
 		drawRim(bezelCanvas);
 	}
 
+	/**
+	 * Regenerate the earth layer of the gauge face. Like the bezel, this
+	 * should only be called when the size of the screen has changed.
+	 */
+	private void regenerateFace()
+	{
+		// free the old bitmap
+		if (faceBitmap != null)
+		{
+			faceBitmap.recycle();
+		}
+
+		faceBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
+				Bitmap.Config.ARGB_8888);
+		Canvas faceCanvas = new Canvas(faceBitmap);
+		float scale = (float) getWidth();
+		faceCanvas.scale(scale, scale);
+
+		skyBackgroundRect.set(rimRect.left, rimRect.top, rimRect.right,
+				rimRect.bottom);
+
+		faceCanvas.drawArc(skyBackgroundRect, 0, 360, true, skyPaint);
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas)
 	{
@@ -1,11 +1,8 @@
 package com.kircherelectronics.lowpasslinearacceleration.plot;
 
-import java.util.LinkedList;
-
 import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
 import com.androidplot.xy.PointLabelFormatter;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -48,8 +45,7 @@ public class DynamicLinePlot
 
 	private XYPlot dynamicPlot;
 
-	private SparseArray<SimpleXYSeries> series;
-	private SparseArray<LinkedList<Number>> history;
+	private SparseArray<HistoryXYSeries> series;
 
 	/**
 	 * Initialize a new Acceleration View object.
@@ -61,8 +57,7 @@ public class DynamicLinePlot
 	{
 		this.dynamicPlot = dynamicPlot;
 
-		series = new SparseArray<SimpleXYSeries>();
-		history = new SparseArray<LinkedList<Number>>();
+		series = new SparseArray<HistoryXYSeries>();
 
 		initPlot();
 	}
@@ -130,6 +125,11 @@ public class DynamicLinePlot
 	public void setWindowSize(int windowSize)
 	{
 		this.windowSize = windowSize;
+
+		for (int i = 0; i < series.size(); i++)
+		{
+			series.valueAt(i).setWindowSize(windowSize);
+		}
 	}
 
 	/**
@@ -138,18 +138,9 @@ public class DynamicLinePlot
 	 * @param data
 	 *            the data.
 	 */
-	public void setData(double data, int key)
+	public void setData(float data, int key)
 	{
-
-		if (history.get(key).size() > windowSize)
-		{
-			history.get(key).removeFirst();
-		}
-
-		history.get(key).addLast(data);
-
-		series.get(key).setModel(history.get(key),
-				SimpleXYSeries.ArrayFormat.Y_VALS_ONLY);
+		series.get(key).add(data);
 	}
 
 	/**
@@ -172,9 +163,7 @@ public class DynamicLinePlot
 	 */
 	public void addSeriesPlot(String seriesName, int key, int color)
 	{
-		history.append(key, new LinkedList<Number>());
-
-		series.append(key, new SimpleXYSeries(seriesName));
+		series.append(key, new HistoryXYSeries(seriesName, windowSize));
 
 		LineAndPointFormatter formatter = new LineAndPointFormatter(Color.rgb(
 				0, 153, 204), Color.rgb(0, 153, 204), Color.TRANSPARENT,
@@ -209,9 +198,7 @@ public class DynamicLinePlot
 	{
 		dynamicPlot.removeSeries(series.get(key));
 
-		history.get(key).removeAll(history.get(key));
-		history.remove(key);
-
+		series.get(key).clear();
 		series.remove(key);
 	}
 
@@ -0,0 +1,182 @@
+package com.kircherelectronics.lowpasslinearacceleration.plot;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import android.graphics.Canvas;
+
+import com.androidplot.Plot;
+import com.androidplot.PlotEvent;
+import com.androidplot.PlotListener;
+import com.androidplot.series.XYSeries;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A plot series that reads its y values straight out of a PlotHistory by
+ * index, with the index of each value as its x value. Adding a value writes
+ * one float into the history instead of rebuilding a series model, so the
+ * cost of adding a value doesn't depend on the window size.
+ * 
+ * The plot renders on its own thread, so like SimpleXYSeries the history is
+ * read locked for the duration of each draw. The plot registers the series
+ * as a listener when it is added.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class HistoryXYSeries implements XYSeries, PlotListener
+{
+	private final String title;
+
+	private final PlotHistory history;
+
+	// The boxed x values, created when the window size changes rather than
+	// on every draw.
+	private Integer[] domain;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Create a new series.
+	 * 
+	 * @param title
+	 *            The title of the series.
+	 * @param windowSize
+	 *            The number of values to keep.
+	 */
+	public HistoryXYSeries(String title, int windowSize)
+	{
+		this.title = title;
+
+		history = new PlotHistory(windowSize);
+
+		createDomain();
+	}
+
+	/**
+	 * Add a value to the series, dropping the oldest value if the window is
+	 * full.
+	 * 
+	 * @param value
+	 *            The value.
+	 */
+	public void add(float value)
+	{
+		lock.writeLock().lock();
+
+		try
+		{
+			history.add(value);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all of the values from the series.
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+
+		try
+		{
+			history.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Set the number of values to keep.
+	 * 
+	 * @param windowSize
+	 *            The window size.
+	 */
+	public void setWindowSize(int windowSize)
+	{
+		lock.writeLock().lock();
+
+		try
+		{
+			history.setWindowSize(windowSize);
+
+			createDomain();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String getTitle()
+	{
+		return title;
+	}
+
+	@Override
+	public int size()
+	{
+		return history.size();
+	}
+
+	@Override
+	public Number getX(int index)
+	{
+		return domain[index];
+	}
+
+	@Override
+	public Number getY(int index)
+	{
+		return history.get(index);
+	}
+
+	@Override
+	public void onPlotUpdate(PlotEvent event)
+	{
+	}
+
+	@Override
+	public void onBeforeDraw(Plot plot, Canvas canvas)
+	{
+		lock.readLock().lock();
+	}
+
+	@Override
+	public void onAfterDraw(Plot plot, Canvas canvas)
+	{
+		lock.readLock().unlock();
+	}
+
+	private void createDomain()
+	{
+		domain = new Integer[history.getWindowSize()];
+
+		for (int i = 0; i < domain.length; i++)
+		{
+			domain[i] = i;
+		}
+	}
+}
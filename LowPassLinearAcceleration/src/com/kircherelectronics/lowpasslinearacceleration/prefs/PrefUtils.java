@@ -23,9 +23,27 @@ public class PrefUtils
 	public final static String FILTER_PREFS = "filter_prefs";
 	public final static String SENSOR_PREFS = "sensor_prefs";
 	public final static String LPF_TIME_CONSTANT = "lpf_time_constant";
+	public final static String FILTER_TYPE = "filter_type";
+	public final static String FILTER_TYPE_SINGLE_POLE = "Single-Pole";
+	public final static String FILTER_TYPE_BUTTERWORTH = "Butterworth";
+	public final static String BUTTERWORTH_ORDER = "butterworth_order";
 	public final static String INVERT_AXIS_ACTIVE = "invert_axis_active";
 	public final static String SENSOR_FREQUENCY_PREF = "sensor_frequency";
 	public final static String SENSOR_FREQUENCY_SLOW = "Slow";
 	public final static String SENSOR_FREQUENCY_MEDIUM = "Medium";
 	public final static String SENSOR_FREQUENCY_FAST = "Fast";
+	public final static String SENSOR_FREQUENCY_CUSTOM = "Custom";
+	public final static String SENSOR_SAMPLING_PERIOD = "sensor_sampling_period";
+	public final static int DEFAULT_SAMPLING_PERIOD = 10000;
+	public final static int MIN_SAMPLING_PERIOD = 1000;
+	public final static String LOG_FULL_RATE_ACTIVE = "log_full_rate_active";
+	public final static String LOG_BINARY_ACTIVE = "log_binary_active";
+	public final static String CAPTURE_THRESHOLD = "capture_threshold";
+	public final static float DEFAULT_CAPTURE_THRESHOLD = 0.5f;
+	public final static String CAPTURE_PRE_TRIGGER = "capture_pre_trigger";
+	public final static float DEFAULT_CAPTURE_PRE_TRIGGER = 2;
+	public final static String CAPTURE_POST_TRIGGER = "capture_post_trigger";
+	public final static float DEFAULT_CAPTURE_POST_TRIGGER = 5;
+	public final static float MAX_CAPTURE_TIME = 60;
+	public final static String SENSOR_REPORT_LATENCY = "sensor_report_latency";
 }
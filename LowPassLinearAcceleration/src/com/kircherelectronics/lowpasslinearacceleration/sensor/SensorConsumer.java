@@ -0,0 +1,42 @@
+package com.kircherelectronics.lowpasslinearacceleration.sensor;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface that allows the sensor hub to hand the accelerometer samples
+ * to its subscribers. The callback is made on the sensor thread.
+ * 
+ * @author Kaleb
+ * 
+ */
+public interface SensorConsumer
+{
+	/**
+	 * New samples have arrived, oldest first. The arrays are reused for the
+	 * next block, so copy out anything that must be kept.
+	 * 
+	 * @param timestamps
+	 *            The times of the samples in nanoseconds.
+	 * @param values
+	 *            The interleaved xyz acceleration in m/s^2.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public void onSensorSamples(long[] timestamps, float[] values, int length);
+}
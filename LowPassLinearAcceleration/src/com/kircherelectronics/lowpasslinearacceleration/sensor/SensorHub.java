@@ -0,0 +1,678 @@
+package com.kircherelectronics.lowpasslinearacceleration.sensor;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Owns the one accelerometer registration of the process and hands every
+ * sample to the subscribed consumers on a shared sensor thread. The hub also
+ * measures the delivery rate, so consumers don't each need their own timing.
+ * 
+ * Samples are handed out in blocks. Without batching every sample is handed
+ * on as it arrives. A batched sensor delivers bursts from its hardware FIFO,
+ * which are passed on in blocks covering about a frame of sensor time, so a
+ * burst is filtered and logged in a few passes without holding samples back
+ * from the display for long. The end of a burst is handed out shortly after
+ * it arrives, and when a batched sensor is registered again its FIFO is
+ * flushed first, so no samples are held back or dropped.
+ * 
+ * The registration is kept for a short grace period after the last consumer
+ * unsubscribes, so switching between activities, which unsubscribes one
+ * before the next subscribes, doesn't register the sensor again.
+ * 
+ * Subscribe, unsubscribe and set the sensor delay from the UI thread.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class SensorHub implements SensorEventListener
+{
+	private static final String tag = SensorHub.class.getSimpleName();
+
+	// The most samples handed to the consumers at once
+	public final static int BLOCK_SIZE = 256;
+
+	// How long the sensor stays registered without consumers, in ms
+	private static final long UNREGISTER_DELAY = 2000;
+
+	// How often the jitter statistics are published, in ns of sensor time
+	private static final long STATISTICS_INTERVAL = 250000000L;
+
+	// How much sensor time a block of batched samples covers before it is
+	// handed out, about one frame at 30 fps, in ns
+	private static final long BATCH_FLUSH_INTERVAL = 33333333L;
+
+	// How long the end of a burst waits for more samples before it is handed
+	// out, in ms
+	private static final long BATCH_TAIL_DELAY = 33;
+
+	// How long to wait for the FIFO of a batched sensor to be flushed before
+	// it is registered again anyway, in ms
+	private static final long FIFO_FLUSH_TIMEOUT = 1000;
+
+	private static SensorHub instance;
+
+	private boolean registered = false;
+
+	// The delay the sensor is registered with, as in SensorManager, or the
+	// sampling period in microseconds
+	private int sensorDelay = SensorManager.SENSOR_DELAY_FASTEST;
+
+	// How long the sensor may hold samples in its FIFO, in microseconds
+	private int maxReportLatency = 0;
+
+	// Whether the sensor is registered with batching, read by the sensor
+	// thread
+	private volatile boolean batched = false;
+
+	// The listener a batched sensor is registered with, created on KitKat
+	// and later only
+	private SensorEventListener batchListener;
+
+	// Set while the FIFO of a batched registration that is being replaced
+	// or removed is flushed
+	private boolean fifoFlushPending = false;
+
+	// Set while the end of a burst waits to be handed out, owned by the
+	// sensor thread
+	private boolean tailPending = false;
+
+	// The block of samples collected on the sensor thread
+	private final long[] timestamps = new long[BLOCK_SIZE];
+	private final float[] values = new float[BLOCK_SIZE * 3];
+	private int length = 0;
+
+	// Written by the sensor thread
+	private volatile float frequency = 0;
+	private volatile float jitter = 0;
+	private volatile float periodPercentile = 0;
+	private volatile int dropped = 0;
+	private volatile int duplicates = 0;
+
+	// The sensor time the statistics were last published at
+	private long statisticsTime = 0;
+
+	// Replaced rather than modified, so the sensor thread can walk it without
+	// locking or allocating.
+	private volatile SensorConsumer[] consumers = new SensorConsumer[0];
+
+	private final Handler handler;
+
+	private final Handler sensorHandler;
+
+	// Estimates the delivery rate of the sensor, owned by the sensor thread
+	private final RateEstimator rateEstimator;
+
+	private final Sensor sensor;
+
+	private final SensorManager sensorManager;
+
+	// Receives the sensor events for the life of the process
+	private final SensorThread sensorThread;
+
+	private final Runnable unregister = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			synchronized (SensorHub.this)
+			{
+				if (consumers.length == 0)
+				{
+					unregisterSensor();
+				}
+			}
+		}
+	};
+
+	// Starts the measurements of a new registration afresh, on the sensor
+	// thread
+	private final Runnable resetRate = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// Hand out the samples collected at the old rate, so they
+			// aren't handed out with the new ones.
+			flush();
+
+			rateEstimator.reset();
+
+			frequency = 0;
+			jitter = 0;
+			periodPercentile = 0;
+			dropped = 0;
+			duplicates = 0;
+
+			statisticsTime = 0;
+		}
+	};
+
+	// Hands out the end of a burst of batched samples, on the sensor thread
+	private final Runnable flushTail = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			tailPending = false;
+
+			flush();
+		}
+	};
+
+	// Removes a batched registration once its FIFO is flushed, and registers
+	// the sensor again if it is still wanted
+	private final Runnable completeFifoFlush = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			synchronized (SensorHub.this)
+			{
+				if (!fifoFlushPending)
+				{
+					return;
+				}
+
+				fifoFlushPending = false;
+
+				handler.removeCallbacks(completeFifoFlush);
+
+				sensorManager.unregisterListener(batchListener);
+
+				if (registered)
+				{
+					registerSensor();
+				}
+			}
+		}
+	};
+
+	/**
+	 * Get the sensor hub of the process.
+	 * 
+	 * @param context
+	 *            Any context of the application.
+	 * @return Returns the sensor hub.
+	 */
+	public static synchronized SensorHub getInstance(Context context)
+	{
+		if (instance == null)
+		{
+			instance = new SensorHub(context.getApplicationContext());
+		}
+
+		return instance;
+	}
+
+	private SensorHub(Context context)
+	{
+		sensorManager = (SensorManager) context
+				.getSystemService(Context.SENSOR_SERVICE);
+
+		sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+
+		rateEstimator = new RateEstimator();
+
+		// Created on the UI thread, so the grace period runs there.
+		handler = new Handler();
+
+		sensorThread = new SensorThread();
+		sensorThread.start();
+
+		sensorHandler = sensorThread.getHandler();
+	}
+
+	/**
+	 * Get the handler of the sensor thread, to run code that shares state
+	 * with a consumer.
+	 * 
+	 * @return Returns a handler on the sensor thread.
+	 */
+	public Handler getSensorHandler()
+	{
+		return sensorHandler;
+	}
+
+	/**
+	 * Get the measured delivery rate of the sensor.
+	 * 
+	 * @return Returns the frequency in Hz, or zero if it isn't known yet.
+	 */
+	public float getFrequency()
+	{
+		return frequency;
+	}
+
+	/**
+	 * Get the fastest rate the sensor can deliver.
+	 * 
+	 * @return Returns the frequency in Hz, or zero if it isn't known.
+	 */
+	public float getMaxFrequency()
+	{
+		if (sensor == null
+				|| Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD)
+		{
+			return 0;
+		}
+
+		return getMinDelayFrequency();
+	}
+
+	/**
+	 * Get the standard deviation of the sample periods of the sensor.
+	 * 
+	 * @return Returns the jitter in seconds, or zero if it isn't known yet.
+	 */
+	public float getJitter()
+	{
+		return jitter;
+	}
+
+	/**
+	 * Get the 99th percentile of the sample periods of the sensor.
+	 * 
+	 * @return Returns the sample period in seconds, or zero if it isn't known
+	 *         yet.
+	 */
+	public float getPeriodPercentile()
+	{
+		return periodPercentile;
+	}
+
+	/**
+	 * Get the number of samples missing from gaps in the sensor timestamps
+	 * since the sensor was registered.
+	 * 
+	 * @return Returns the dropped sample count.
+	 */
+	public int getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Get the number of samples with a repeated or out of order timestamp
+	 * since the sensor was registered.
+	 * 
+	 * @return Returns the duplicate sample count.
+	 */
+	public int getDuplicates()
+	{
+		return duplicates;
+	}
+
+	/**
+	 * Get the delay the sensor is registered with.
+	 * 
+	 * @return Returns the sensor delay, as in SensorManager, or the sampling
+	 *         period in microseconds.
+	 */
+	public synchronized int getSensorDelay()
+	{
+		return sensorDelay;
+	}
+
+	/**
+	 * Set the delay to register the sensor with. The sensor is only
+	 * registered again if the delay has changed. The requested period is only
+	 * a hint to the sensor, so check getFrequency() for the rate actually
+	 * achieved.
+	 * 
+	 * @param sensorDelay
+	 *            The sensor delay, as in SensorManager, or the sampling period
+	 *            in microseconds.
+	 */
+	public synchronized void setSensorDelay(int sensorDelay)
+	{
+		if (this.sensorDelay == sensorDelay)
+		{
+			return;
+		}
+
+		this.sensorDelay = sensorDelay;
+
+		if (registered)
+		{
+			unregisterSensor();
+			registerSensor();
+		}
+	}
+
+	/**
+	 * Get how long the sensor may hold samples before reporting them.
+	 * 
+	 * @return Returns the maximum report latency in microseconds.
+	 */
+	public synchronized int getMaxReportLatency()
+	{
+		return maxReportLatency;
+	}
+
+	/**
+	 * Set how long the sensor may hold samples in its hardware FIFO before
+	 * reporting them, so the CPU is woken once per batch instead of once per
+	 * sample. Batching needs KitKat and a sensor with a FIFO; otherwise the
+	 * samples are reported as they arrive. The sensor is only registered
+	 * again if the latency has changed.
+	 * 
+	 * @param maxReportLatency
+	 *            The maximum report latency in microseconds, or zero to turn
+	 *            batching off.
+	 */
+	public synchronized void setMaxReportLatency(int maxReportLatency)
+	{
+		if (this.maxReportLatency == maxReportLatency)
+		{
+			return;
+		}
+
+		this.maxReportLatency = maxReportLatency;
+
+		if (registered)
+		{
+			unregisterSensor();
+			registerSensor();
+		}
+	}
+
+	/**
+	 * Start handing samples to a consumer.
+	 * 
+	 * @param consumer
+	 *            The consumer.
+	 */
+	public synchronized void subscribe(SensorConsumer consumer)
+	{
+		SensorConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			if (consumers[i] == consumer)
+			{
+				return;
+			}
+		}
+
+		SensorConsumer[] subscribed = new SensorConsumer[consumers.length + 1];
+
+		System.arraycopy(consumers, 0, subscribed, 0, consumers.length);
+
+		subscribed[consumers.length] = consumer;
+
+		this.consumers = subscribed;
+
+		handler.removeCallbacks(unregister);
+
+		if (!registered)
+		{
+			registerSensor();
+		}
+	}
+
+	/**
+	 * Stop handing samples to a consumer. A sample that is being handed out
+	 * may still reach the consumer.
+	 * 
+	 * @param consumer
+	 *            The consumer.
+	 */
+	public synchronized void unsubscribe(SensorConsumer consumer)
+	{
+		SensorConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			if (consumers[i] == consumer)
+			{
+				SensorConsumer[] subscribed = new SensorConsumer[consumers.length
+						- 1];
+
+				System.arraycopy(consumers, 0, subscribed, 0, i);
+				System.arraycopy(consumers, i + 1, subscribed, i,
+						subscribed.length - i);
+
+				this.consumers = subscribed;
+
+				break;
+			}
+		}
+
+		if (this.consumers.length == 0)
+		{
+			handler.postDelayed(unregister, UNREGISTER_DELAY);
+		}
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event)
+	{
+		rateEstimator.addSample(event.timestamp);
+
+		int offset = length * 3;
+
+		timestamps[length] = event.timestamp;
+
+		values[offset] = event.values[0];
+		values[offset + 1] = event.values[1];
+		values[offset + 2] = event.values[2];
+
+		length++;
+
+		// Sensor events arrive as file descriptor callbacks of the looper,
+		// which doesn't go idle between them, so the block is handed out
+		// here rather than when the thread runs out of work.
+		if (!batched || length == BLOCK_SIZE
+				|| event.timestamp - timestamps[0] >= BATCH_FLUSH_INTERVAL)
+		{
+			flush();
+		}
+		else if (!tailPending)
+		{
+			// Hand out the end of the burst if no more samples follow.
+			tailPending = true;
+
+			sensorHandler.postDelayed(flushTail, BATCH_TAIL_DELAY);
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy)
+	{
+	}
+
+	private void registerSensor()
+	{
+		if (sensor == null)
+		{
+			Log.w(tag, "No accelerometer");
+
+			return;
+		}
+
+		if (fifoFlushPending)
+		{
+			// Registered once the FIFO of the old registration is flushed.
+			registered = true;
+
+			return;
+		}
+
+		// The block and the rate estimator belong to the sensor thread.
+		sensorHandler.post(resetRate);
+
+		batched = maxReportLatency > 0
+				&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+		if (batched)
+		{
+			registerBatched();
+		}
+		else
+		{
+			sensorManager.registerListener(this, sensor, sensorDelay,
+					sensorHandler);
+		}
+
+		registered = true;
+	}
+
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+	private float getMinDelayFrequency()
+	{
+		int minDelay = sensor.getMinDelay();
+
+		return minDelay > 0 ? 1000000f / minDelay : 0;
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private void registerBatched()
+	{
+		if (sensor.getFifoMaxEventCount() == 0)
+		{
+			Log.w(tag, "No sensor FIFO, samples will not be batched");
+		}
+
+		if (batchListener == null)
+		{
+			batchListener = new BatchListener();
+		}
+
+		sensorManager.registerListener(batchListener, sensor, sensorDelay,
+				maxReportLatency, sensorHandler);
+	}
+
+	private void unregisterSensor()
+	{
+		registered = false;
+
+		if (fifoFlushPending)
+		{
+			return;
+		}
+
+		// Samples still in the FIFO of a batched sensor would be lost, so
+		// while there are consumers it is flushed before the registration
+		// is removed.
+		if (batched && consumers.length > 0 && flushFifo())
+		{
+			fifoFlushPending = true;
+
+			handler.postDelayed(completeFifoFlush, FIFO_FLUSH_TIMEOUT);
+
+			return;
+		}
+
+		sensorManager.unregisterListener(batched ? batchListener : this);
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private boolean flushFifo()
+	{
+		return sensorManager.flush(batchListener);
+	}
+
+	/**
+	 * Hand the collected samples to the consumers. Called on the sensor
+	 * thread.
+	 */
+	private void flush()
+	{
+		if (length == 0)
+		{
+			return;
+		}
+
+		publishStatistics(timestamps[length - 1]);
+
+		SensorConsumer[] consumers = this.consumers;
+
+		for (int i = 0; i < consumers.length; i++)
+		{
+			consumers[i].onSensorSamples(timestamps, values, length);
+		}
+
+		length = 0;
+	}
+
+	/**
+	 * Receives the samples of a batched sensor, and hands out the samples of
+	 * a registration that is being removed once its FIFO is flushed.
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private class BatchListener implements SensorEventListener2
+	{
+		@Override
+		public void onSensorChanged(SensorEvent event)
+		{
+			SensorHub.this.onSensorChanged(event);
+		}
+
+		@Override
+		public void onAccuracyChanged(Sensor sensor, int accuracy)
+		{
+		}
+
+		@Override
+		public void onFlushCompleted(Sensor sensor)
+		{
+			flush();
+
+			handler.post(completeFifoFlush);
+		}
+	}
+
+	/**
+	 * Publish the measurements of the rate estimator for other threads. The
+	 * frequency is published with every block, the rest of the statistics,
+	 * which take longer to find, a few times a second.
+	 * 
+	 * @param timestamp
+	 *            The time of the newest sample in nanoseconds.
+	 */
+	private void publishStatistics(long timestamp)
+	{
+		frequency = rateEstimator.getFrequency();
+
+		if (timestamp - statisticsTime < STATISTICS_INTERVAL)
+		{
+			return;
+		}
+
+		statisticsTime = timestamp;
+
+		jitter = rateEstimator.getJitter();
+		periodPercentile = rateEstimator.getPeriodPercentile(0.99f);
+		dropped = rateEstimator.getDropped();
+		duplicates = rateEstimator.getDuplicates();
+	}
+}
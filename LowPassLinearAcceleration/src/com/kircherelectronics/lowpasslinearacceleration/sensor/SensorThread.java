@@ -0,0 +1,63 @@
+package com.kircherelectronics.lowpasslinearacceleration.sensor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A thread to receive sensor events and run the filters on, so the sensor
+ * cadence is not tied to the UI thread. Pass the handler to
+ * SensorManager.registerListener() and the events will be delivered here
+ * instead of on the main looper, where they would have to wait behind plot
+ * redraws and the gauges.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class SensorThread extends HandlerThread
+{
+	private Handler handler;
+
+	/**
+	 * Create a new sensor thread. Call start() before getHandler().
+	 */
+	public SensorThread()
+	{
+		super(SensorThread.class.getSimpleName(),
+				Process.THREAD_PRIORITY_URGENT_DISPLAY);
+	}
+
+	/**
+	 * Get the handler to deliver sensor events with.
+	 * 
+	 * @return Returns a handler on this thread's looper.
+	 */
+	public synchronized Handler getHandler()
+	{
+		if (handler == null)
+		{
+			// Blocks until the looper is prepared.
+			handler = new Handler(getLooper());
+		}
+
+		return handler;
+	}
+}
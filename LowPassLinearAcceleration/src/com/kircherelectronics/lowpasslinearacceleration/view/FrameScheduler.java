@@ -0,0 +1,246 @@
+package com.kircherelectronics.lowpasslinearacceleration.view;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.view.Choreographer;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Paces the rendering of the UI to the display. On Jelly Bean and later the
+ * scheduler is woken by the Choreographer on every vsync, and on older
+ * releases by a Handler at the target frame interval. A frame is only offered
+ * to the callback once the target frame interval has passed since the last
+ * frame that was rendered, so the UI is drawn at most at the target frame
+ * rate, in step with the display, and not at all while there is nothing new
+ * to show.
+ * 
+ * Must be created and used on the UI thread.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class FrameScheduler
+{
+	public final static int DEFAULT_TARGET_FPS = 30;
+
+	private static final long NS2S = 1000000000L;
+
+	private boolean running = false;
+
+	// The time of the last frame that was rendered in nanoseconds
+	private long renderTime = 0;
+
+	// The target time between frames in nanoseconds
+	private long frameInterval;
+
+	// How early a vsync may arrive and still be used for the next frame, so
+	// jitter in the vsync doesn't halve the frame rate.
+	private long frameTolerance;
+
+	private final RenderCallback callback;
+
+	private final Ticker ticker;
+
+	/**
+	 * Create a new frame scheduler.
+	 * 
+	 * @param callback
+	 *            The callback to render the frames.
+	 */
+	public FrameScheduler(RenderCallback callback)
+	{
+		this.callback = callback;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+		{
+			ticker = new ChoreographerTicker(this);
+		}
+		else
+		{
+			ticker = new HandlerTicker(this);
+		}
+
+		setTargetFps(DEFAULT_TARGET_FPS);
+	}
+
+	/**
+	 * Set the most frames rendered per second.
+	 * 
+	 * @param fps
+	 *            The target frame rate.
+	 */
+	public void setTargetFps(int fps)
+	{
+		frameInterval = NS2S / Math.max(fps, 1);
+		frameTolerance = frameInterval / 4;
+	}
+
+	/**
+	 * Get the most frames rendered per second.
+	 * 
+	 * @return Returns the target frame rate.
+	 */
+	public int getTargetFps()
+	{
+		return (int) (NS2S / frameInterval);
+	}
+
+	/**
+	 * Start scheduling frames.
+	 */
+	public void start()
+	{
+		if (!running)
+		{
+			running = true;
+
+			renderTime = 0;
+
+			ticker.schedule();
+		}
+	}
+
+	/**
+	 * Stop scheduling frames.
+	 */
+	public void stop()
+	{
+		running = false;
+
+		ticker.cancel();
+	}
+
+	/**
+	 * A vsync, or a tick of the fallback timer, has arrived.
+	 */
+	private void onTick(long frameTime)
+	{
+		if (!running)
+		{
+			return;
+		}
+
+		ticker.schedule();
+
+		if (renderTime != 0
+				&& frameTime - renderTime < frameInterval - frameTolerance)
+		{
+			return;
+		}
+
+		// Only a frame that was rendered starts a new interval, so new data
+		// after an idle spell is shown on the next vsync.
+		if (callback.onRenderFrame(frameTime))
+		{
+			renderTime = frameTime;
+		}
+	}
+
+	/**
+	 * The source of the ticks.
+	 */
+	private static abstract class Ticker
+	{
+		protected final FrameScheduler scheduler;
+
+		protected Ticker(FrameScheduler scheduler)
+		{
+			this.scheduler = scheduler;
+		}
+
+		/**
+		 * Request the next tick.
+		 */
+		abstract void schedule();
+
+		/**
+		 * Cancel the pending tick.
+		 */
+		abstract void cancel();
+	}
+
+	/**
+	 * Ticks on every vsync. Only loaded on Jelly Bean and later.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private static class ChoreographerTicker extends Ticker implements
+			Choreographer.FrameCallback
+	{
+		private final Choreographer choreographer;
+
+		ChoreographerTicker(FrameScheduler scheduler)
+		{
+			super(scheduler);
+
+			choreographer = Choreographer.getInstance();
+		}
+
+		@Override
+		void schedule()
+		{
+			choreographer.postFrameCallback(this);
+		}
+
+		@Override
+		void cancel()
+		{
+			choreographer.removeFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos)
+		{
+			scheduler.onTick(frameTimeNanos);
+		}
+	}
+
+	/**
+	 * Ticks at the target frame interval for releases without the
+	 * Choreographer.
+	 */
+	private static class HandlerTicker extends Ticker implements Runnable
+	{
+		private final Handler handler = new Handler();
+
+		HandlerTicker(FrameScheduler scheduler)
+		{
+			super(scheduler);
+		}
+
+		@Override
+		void schedule()
+		{
+			handler.postDelayed(this, scheduler.frameInterval / 1000000L);
+		}
+
+		@Override
+		void cancel()
+		{
+			handler.removeCallbacks(this);
+		}
+
+		@Override
+		public void run()
+		{
+			scheduler.onTick(System.nanoTime());
+		}
+	}
+}
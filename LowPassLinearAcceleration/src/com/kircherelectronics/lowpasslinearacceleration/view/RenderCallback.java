@@ -0,0 +1,40 @@
+package com.kircherelectronics.lowpasslinearacceleration.view;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface that allows a frame scheduler to callback its owner to render
+ * a frame. The callback is made on the UI thread.
+ * 
+ * @author Kaleb
+ * 
+ */
+public interface RenderCallback
+{
+	/**
+	 * Render a frame if there is anything new to show. All of the views
+	 * should be updated here so they are invalidated in a single pass.
+	 * 
+	 * @param frameTime
+	 *            The time the frame started in nanoseconds.
+	 * @return Returns true if a frame was rendered, false if there was
+	 *         nothing new to show.
+	 */
+	public boolean onRenderFrame(long frameTime);
+}
@@ -0,0 +1,166 @@
+package com.kircherelectronics.lowpasslinearacceleration.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kircherelectronics.lowpasslinearacceleration.filter.FilterBank;
+import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Benchmarks a FilterBank against one LowPassFilter per channel, with every
+ * channel advanced one time step at a time like a server filtering many live
+ * devices. Both filter at the same fixed sample rate, and each channel has
+ * its own time constant. As in LowPassFilterBenchmark the scores are in
+ * nanoseconds per sample regardless of the channel count.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBankBenchmark
+{
+	// 500 Hz
+	private static final float SAMPLE_RATE = 1000000000f / SampleData.PERIOD;
+
+	@Param(
+	{ "3", "64", "320" })
+	public int channels;
+
+	// The number of time steps
+	private int length;
+
+	private LowPassFilter[] filters;
+
+	private FilterBank bank;
+
+	// The interleaved xyz samples and timestamps of each channel
+	private float[][] samples;
+	private long[][] timestamps;
+
+	// The time steps of every channel, laid out for the filter bank
+	private float[] steps;
+
+	// A single sample as it arrives from the sensor
+	private float[] sample;
+
+	// The output of the filter bank
+	private float[] output;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(42);
+
+		length = SampleData.SAMPLES / channels;
+
+		filters = new LowPassFilter[channels];
+		bank = new FilterBank(channels, SAMPLE_RATE);
+
+		samples = new float[channels][];
+		timestamps = new long[channels][];
+
+		for (int i = 0; i < channels; i++)
+		{
+			float timeConstant = 0.1f + random.nextFloat();
+
+			filters[i] = new LowPassFilter();
+			filters[i].setWarmStart(LowPassFilter.DEFAULT_WARM_START);
+			filters[i].setSampleRate(SAMPLE_RATE);
+			filters[i].setTimeConstant(timeConstant);
+
+			bank.setTimeConstant(i, timeConstant);
+
+			samples[i] = SampleData.createSamples(random, length);
+			timestamps[i] = SampleData.createTimestamps(random, length);
+		}
+
+		steps = new float[length * channels * 3];
+
+		for (int j = 0; j < length; j++)
+		{
+			for (int i = 0; i < channels; i++)
+			{
+				System.arraycopy(samples[i], j * 3, steps,
+						(j * channels + i) * 3, 3);
+			}
+		}
+
+		sample = new float[3];
+		output = new float[channels * 3];
+	}
+
+	/**
+	 * One LowPassFilter per channel.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SampleData.SAMPLES)
+	public void lowPassFilters(Blackhole blackhole)
+	{
+		for (int j = 0; j < length; j++)
+		{
+			for (int i = 0; i < channels; i++)
+			{
+				System.arraycopy(samples[i], j * 3, sample, 0, 3);
+
+				blackhole.consume(filters[i].addSamples(sample,
+						timestamps[i][j]));
+			}
+		}
+	}
+
+	/**
+	 * Every channel in one filter bank, one time step per call.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SampleData.SAMPLES)
+	public void filterBank(Blackhole blackhole)
+	{
+		int width = channels * 3;
+
+		for (int j = 0; j < length; j++)
+		{
+			System.arraycopy(steps, j * width, output, 0, width);
+
+			bank.addSamples(output, output);
+
+			blackhole.consume(output);
+		}
+	}
+}
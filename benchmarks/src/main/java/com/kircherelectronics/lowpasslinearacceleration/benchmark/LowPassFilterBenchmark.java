@@ -0,0 +1,244 @@
+package com.kircherelectronics.lowpasslinearacceleration.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Benchmarks the ways of feeding samples to LowPassFilter. A channel is one
+ * accelerometer stream with its own filter. Each channel is filtered in
+ * blocks of the same length however many channels there are, so the filters
+ * run at a realistic block size, and an invocation filters enough blocks
+ * that every channel count handles the same number of samples. The scores
+ * are in nanoseconds per sample.
+ *
+ * The timestamps move on by the length of a block after every block. The
+ * paths that take a timestamp per sample add an offset to it. The block path
+ * takes the timestamps as an array, so it cycles through copies shifted
+ * ahead of time, one per block of an invocation, and only goes back in time
+ * between invocations. Run with the gc profiler to see the allocation rate of
+ * each path.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LowPassFilterBenchmark
+{
+	// The samples filtered by every invocation, a whole number of blocks for
+	// each channel count
+	static final int SAMPLES = 64 * 3 * SampleData.BLOCK_SIZE;
+
+	@Param(
+	{ "1", "3", "64" })
+	public int channels;
+
+	// The number of samples of each channel in a block
+	private int length;
+
+	// The number of blocks of each channel filtered by an invocation
+	private int blocks;
+
+	// The time a block of each channel covers
+	private long[] spans;
+
+	// How far each channel's timestamps have moved on since they were
+	// created, for the paths that take a timestamp per sample
+	private long[] offsets;
+
+	private LowPassFilter[] filters;
+
+	// The interleaved xyz samples and timestamps of a block of each channel
+	private float[][] samples;
+	private long[][] timestamps;
+
+	// The timestamps of each block of an invocation of each channel, for
+	// the block path
+	private long[][][] shiftedTimestamps;
+
+	// A single sample as it arrives from the sensor
+	private float[] sample;
+
+	// The output of the block filter
+	private float[] output;
+
+	@Setup
+	public void setup()
+	{
+		if (SAMPLES % (channels * SampleData.BLOCK_SIZE) != 0)
+		{
+			throw new IllegalArgumentException("Invalid channel count "
+					+ channels);
+		}
+
+		Random random = new Random(42);
+
+		length = SampleData.BLOCK_SIZE;
+		blocks = SAMPLES / (channels * length);
+
+		filters = new LowPassFilter[channels];
+		samples = new float[channels][];
+		timestamps = new long[channels][];
+		shiftedTimestamps = new long[channels][blocks][length];
+		spans = new long[channels];
+		offsets = new long[channels];
+
+		for (int i = 0; i < channels; i++)
+		{
+			filters[i] = new LowPassFilter();
+			samples[i] = SampleData.createSamples(random, length);
+			timestamps[i] = SampleData.createTimestamps(random, length);
+			spans[i] = SampleData.getSpan(timestamps[i]);
+
+			for (int b = 0; b < blocks; b++)
+			{
+				for (int j = 0; j < length; j++)
+				{
+					shiftedTimestamps[i][b][j] = timestamps[i][j] + b
+							* spans[i];
+				}
+			}
+		}
+
+		sample = new float[3];
+		output = new float[length * 3];
+	}
+
+	/**
+	 * The original path, timed by System.nanoTime() on delivery.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void addSamples(Blackhole blackhole)
+	{
+		for (int b = 0; b < blocks; b++)
+		{
+			for (int i = 0; i < channels; i++)
+			{
+				LowPassFilter filter = filters[i];
+				float[] data = samples[i];
+
+				for (int j = 0; j < length; j++)
+				{
+					System.arraycopy(data, j * 3, sample, 0, 3);
+
+					blackhole.consume(filter.addSamples(sample));
+				}
+			}
+		}
+	}
+
+	/**
+	 * One sample at a time with the sensor timestamp.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void addSamplesTimestamped(Blackhole blackhole)
+	{
+		for (int b = 0; b < blocks; b++)
+		{
+			for (int i = 0; i < channels; i++)
+			{
+				LowPassFilter filter = filters[i];
+				float[] data = samples[i];
+				long[] time = timestamps[i];
+				long offset = offsets[i];
+
+				for (int j = 0; j < length; j++)
+				{
+					System.arraycopy(data, j * 3, sample, 0, 3);
+
+					blackhole.consume(filter.addSamples(sample, time[j]
+							+ offset));
+				}
+
+				offsets[i] = offset + spans[i];
+			}
+		}
+	}
+
+	/**
+	 * Each channel filtered one block at a time.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void addSamplesBlock(Blackhole blackhole)
+	{
+		for (int b = 0; b < blocks; b++)
+		{
+			for (int i = 0; i < channels; i++)
+			{
+				filters[i].addSamples(samples[i], shiftedTimestamps[i][b],
+						length, output);
+
+				blackhole.consume(output);
+			}
+		}
+	}
+
+	/**
+	 * Every channel advanced one time step at a time, the way a server
+	 * filtering many live devices sees the data.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void addSamplesMultiChannel(Blackhole blackhole)
+	{
+		for (int b = 0; b < blocks; b++)
+		{
+			for (int j = 0; j < length; j++)
+			{
+				for (int i = 0; i < channels; i++)
+				{
+					System.arraycopy(samples[i], j * 3, sample, 0, 3);
+
+					blackhole.consume(filters[i].addSamples(sample,
+							timestamps[i][j] + offsets[i]));
+				}
+			}
+
+			for (int i = 0; i < channels; i++)
+			{
+				offsets[i] += spans[i];
+			}
+		}
+	}
+}
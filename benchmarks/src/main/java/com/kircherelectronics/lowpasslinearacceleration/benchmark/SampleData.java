@@ -0,0 +1,112 @@
+package com.kircherelectronics.lowpasslinearacceleration.benchmark;
+
+import java.util.Random;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Generates repeatable accelerometer streams for the benchmarks. Each stream
+ * is gravity plus a little vibration and noise, sampled at 500 Hz with some
+ * jitter in the timestamps like a real sensor.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+final class SampleData
+{
+	// The total number of samples processed by one benchmark invocation,
+	// divisible by each of the channel counts so every channel gets the same
+	// number of samples.
+	static final int SAMPLES = 960;
+
+	// The number of samples of each channel filtered by one benchmark
+	// invocation, whatever the number of channels
+	static final int BLOCK_SIZE = 256;
+
+	// 500 Hz in nanoseconds
+	static final long PERIOD = 2000000;
+
+	/**
+	 * Create the interleaved xyz samples of a stream.
+	 *
+	 * @param random
+	 *            The source of the noise.
+	 * @param length
+	 *            The number of samples.
+	 * @return Returns the samples.
+	 */
+	static float[] createSamples(Random random, int length)
+	{
+		float[] samples = new float[length * 3];
+
+		for (int i = 0; i < length; i++)
+		{
+			float vibration = (float) Math.sin(i * 0.3) * 0.05f;
+
+			samples[i * 3] = vibration + (float) random.nextGaussian() * 0.01f;
+			samples[i * 3 + 1] = 0.1f + (float) random.nextGaussian() * 0.01f;
+			samples[i * 3 + 2] = 1 - vibration
+					+ (float) random.nextGaussian() * 0.01f;
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Get the time a stream of timestamps covers, so it can be replayed
+	 * again straight after itself.
+	 *
+	 * @param timestamps
+	 *            The timestamps of the stream.
+	 * @return Returns the span in nanoseconds.
+	 */
+	static long getSpan(long[] timestamps)
+	{
+		return timestamps[timestamps.length - 1] - timestamps[0] + PERIOD;
+	}
+
+	/**
+	 * Create the timestamps of a stream.
+	 *
+	 * @param random
+	 *            The source of the jitter.
+	 * @param length
+	 *            The number of samples.
+	 * @return Returns the timestamps in nanoseconds.
+	 */
+	static long[] createTimestamps(Random random, int length)
+	{
+		long[] timestamps = new long[length];
+
+		// Start at a realistic device uptime.
+		long timestamp = 86400L * 1000000000L;
+
+		for (int i = 0; i < length; i++)
+		{
+			timestamp += PERIOD + random.nextInt(20000) - 10000;
+			timestamps[i] = timestamp;
+		}
+
+		return timestamps;
+	}
+
+	private SampleData()
+	{
+	}
+}
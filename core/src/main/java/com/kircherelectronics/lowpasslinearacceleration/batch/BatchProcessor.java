@@ -0,0 +1,585 @@
+package com.kircherelectronics.lowpasslinearacceleration.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthDesign;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.ZeroPhaseFilter;
+import com.kircherelectronics.lowpasslinearacceleration.log.BinaryLogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.BinaryLogReader;
+import com.kircherelectronics.lowpasslinearacceleration.log.CsvLogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.CsvLogReader;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogFiles;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogFormat;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogReader;
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Filters recorded logs again with a new time constant, off the device. Run
+ * from the command line with directories or logs as arguments; every log
+ * found is filtered with LowPassFilter, exactly as the app would have at the
+ * sample rate measured from the log, and written to the output directory in
+ * its own layout with the new linear acceleration. A summary.csv with a row
+ * of LogSummary statistics per log is written next to them.
+ *
+ * With -n the logs are filtered by a Butterworth filter of that order
+ * instead, and with -z they are filtered forwards and backwards by
+ * ZeroPhaseFilter, so the linear acceleration has no lag.
+ *
+ * Each log is filtered by one thread from start to finish, and the logs are
+ * spread over a pool with a thread per core, so thousands of recordings
+ * are processed in parallel with memory bounded by the block size.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class BatchProcessor
+{
+	public final static String SUMMARY_FILE = "summary.csv";
+
+	public final static String DEFAULT_OUTPUT_DIRECTORY = "filtered";
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final float timeConstant;
+
+	private final int order;
+
+	private final boolean zeroPhase;
+
+	private final File outputDirectory;
+
+	/**
+	 * Create a new batch processor with the single pole filter.
+	 *
+	 * @param timeConstant
+	 *            The time constant of the low-pass filter in seconds.
+	 * @param outputDirectory
+	 *            The directory to write the filtered logs to.
+	 */
+	public BatchProcessor(float timeConstant, File outputDirectory)
+	{
+		this(timeConstant, ZeroPhaseFilter.SINGLE_POLE, false,
+				outputDirectory);
+	}
+
+	/**
+	 * Create a new batch processor.
+	 *
+	 * @param timeConstant
+	 *            The time constant of the low-pass filter in seconds.
+	 * @param order
+	 *            The order of the Butterworth filter, or
+	 *            ZeroPhaseFilter.SINGLE_POLE for the single pole filter.
+	 * @param zeroPhase
+	 *            True to filter forwards and backwards without lag.
+	 * @param outputDirectory
+	 *            The directory to write the filtered logs to.
+	 */
+	public BatchProcessor(float timeConstant, int order, boolean zeroPhase,
+			File outputDirectory)
+	{
+		this.timeConstant = timeConstant;
+		this.order = order;
+		this.zeroPhase = zeroPhase;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Find the logs written by the app.
+	 *
+	 * @param paths
+	 *            Logs, or directories to search for logs, including their
+	 *            subdirectories.
+	 * @param exclude
+	 *            A directory to leave out of the search, or null.
+	 * @return Returns the logs, sorted by path within each directory. A log
+	 *         with the same name as one found before it is left out, since
+	 *         both would be written to the same output.
+	 * @throws IOException
+	 *             If a path can't be resolved.
+	 */
+	public static List<File> findLogs(List<File> paths, File exclude)
+			throws IOException
+	{
+		List<File> logs = new ArrayList<File>();
+
+		Set<String> names = new HashSet<String>();
+
+		File excluded = exclude != null ? exclude.getCanonicalFile() : null;
+
+		for (File path : paths)
+		{
+			findLogs(path, excluded, names, logs);
+		}
+
+		return logs;
+	}
+
+	/**
+	 * Filter a log and write it to the output directory.
+	 *
+	 * @param in
+	 *            The log.
+	 * @return Returns the summary of the filtered log.
+	 * @throws IOException
+	 *             If either file can't be read or written.
+	 */
+	public LogSummary process(File in) throws IOException
+	{
+		File out = new File(outputDirectory, in.getName());
+
+		if (out.getCanonicalFile().equals(in.getCanonicalFile()))
+		{
+			throw new IOException("Output would overwrite the log");
+		}
+
+		long[] timestamps = new long[BLOCK_SIZE];
+		float[] acceleration = new float[BLOCK_SIZE * 3];
+		float[] lpfAcceleration = new float[BLOCK_SIZE * 3];
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		LowPassFilter lpf = null;
+		ButterworthFilter butterworth = null;
+
+		if (order == ZeroPhaseFilter.SINGLE_POLE)
+		{
+			lpf = new LowPassFilter();
+			lpf.setWarmStart(LowPassFilter.DEFAULT_WARM_START);
+			lpf.setTimeConstant(timeConstant);
+		}
+		else
+		{
+			butterworth = new ButterworthFilter();
+			butterworth.setOrder(order);
+			butterworth.setTimeConstant(timeConstant);
+		}
+
+		RateEstimator rateEstimator = new RateEstimator();
+
+		LogSummary summary = new LogSummary(in.getName());
+
+		// Set as soon as each reader is opened, so the finally closes the
+		// log even if a later step throws.
+		LogReader reader = null;
+
+		// A failed log doesn't leave a partial output behind.
+		boolean created = false;
+		boolean complete = false;
+
+		try
+		{
+			LogFormat format;
+
+			if (LogFiles.isBinary(in))
+			{
+				BinaryLogReader binaryReader = new BinaryLogReader(in);
+
+				reader = binaryReader;
+
+				// Keep how the session was captured, with the new time
+				// constant.
+				format = new BinaryLogFormat(binaryReader.getSensorType(),
+						binaryReader.getSamplingPeriod(), timeConstant,
+						binaryReader.isInvertAxis());
+			}
+			else
+			{
+				format = new CsvLogFormat();
+
+				reader = new CsvLogReader(in);
+			}
+
+			if (zeroPhase)
+			{
+				// The reader hands back the zero-phase linear acceleration.
+				reader = new ZeroPhaseFilter(reader, order, timeConstant);
+			}
+
+			FileOutputStream stream = new FileOutputStream(out);
+
+			created = true;
+
+			try
+			{
+				FileChannel channel = stream.getChannel();
+
+				format.writeHeader(buffer);
+
+				int length;
+
+				while ((length = reader.read(timestamps, acceleration,
+						lpfAcceleration)) > 0)
+				{
+					if (!zeroPhase)
+					{
+						filter(lpf, butterworth, rateEstimator, timestamps,
+								acceleration, lpfAcceleration, length);
+					}
+
+					summary.addSamples(timestamps, acceleration,
+							lpfAcceleration, length);
+
+					for (int i = 0; i < length; i++)
+					{
+						if (buffer.remaining() < format.getMaxRecordLength())
+						{
+							flush(channel, buffer);
+						}
+
+						format.writeRecord(buffer, timestamps[i],
+								acceleration, lpfAcceleration, i * 3);
+					}
+				}
+
+				flush(channel, buffer);
+			}
+			finally
+			{
+				stream.close();
+			}
+
+			complete = true;
+		}
+		finally
+		{
+			try
+			{
+				if (reader != null)
+				{
+					reader.close();
+				}
+			}
+			finally
+			{
+				if (created && !complete)
+				{
+					out.delete();
+				}
+			}
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Filter logs in parallel. A log that fails is reported on the standard
+	 * error and left out of the summaries.
+	 *
+	 * @param logs
+	 *            The logs.
+	 * @param threads
+	 *            The number of logs to filter at once.
+	 * @return Returns the summaries of the logs that were filtered, in the
+	 *         order of the logs.
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while waiting.
+	 */
+	public List<LogSummary> processAll(List<File> logs, int threads)
+			throws InterruptedException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		List<Future<LogSummary>> futures = new ArrayList<Future<LogSummary>>(
+				logs.size());
+
+		try
+		{
+			for (final File log : logs)
+			{
+				futures.add(executor.submit(new Callable<LogSummary>()
+				{
+					@Override
+					public LogSummary call() throws IOException
+					{
+						return process(log);
+					}
+				}));
+			}
+
+			List<LogSummary> summaries = new ArrayList<LogSummary>(
+					logs.size());
+
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					summaries.add(futures.get(i).get());
+				}
+				catch (ExecutionException e)
+				{
+					System.err.println(logs.get(i) + ": "
+							+ e.getCause().getMessage());
+				}
+			}
+
+			return summaries;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write the summary table of the filtered logs.
+	 *
+	 * @param summaries
+	 *            The summaries.
+	 * @param file
+	 *            The file to write.
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public static void writeSummaries(List<LogSummary> summaries, File file)
+			throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				"US-ASCII");
+
+		try
+		{
+			writer.write(LogSummary.getHeader());
+			writer.write('\n');
+
+			for (LogSummary summary : summaries)
+			{
+				writer.write(summary.toRow());
+				writer.write('\n');
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		float timeConstant = 1;
+
+		File outputDirectory = new File(DEFAULT_OUTPUT_DIRECTORY);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		int order = ZeroPhaseFilter.SINGLE_POLE;
+
+		boolean zeroPhase = false;
+
+		List<File> paths = new ArrayList<File>();
+
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-t") && i + 1 < args.length)
+				{
+					timeConstant = Float.parseFloat(args[++i]);
+				}
+				else if (args[i].equals("-o") && i + 1 < args.length)
+				{
+					outputDirectory = new File(args[++i]);
+				}
+				else if (args[i].equals("-j") && i + 1 < args.length)
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-n") && i + 1 < args.length)
+				{
+					order = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-z"))
+				{
+					zeroPhase = true;
+				}
+				else
+				{
+					paths.add(new File(args[i]));
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			paths.clear();
+		}
+
+		if (paths.isEmpty() || !(timeConstant > 0) || threads < 1
+				|| order < 0 || order > ButterworthDesign.MAX_ORDER)
+		{
+			System.err.println("Usage: BatchProcessor [-t timeConstant] "
+					+ "[-n order] [-z] [-o outputDirectory] [-j threads] "
+					+ "<log or directory>...");
+			System.err.println("An order of 0 is the single pole filter, "
+					+ "-z filters without lag.");
+
+			System.exit(1);
+		}
+
+		try
+		{
+			List<File> logs = findLogs(paths, outputDirectory);
+
+			if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+			{
+				throw new IOException("Can't create " + outputDirectory);
+			}
+
+			BatchProcessor processor = new BatchProcessor(timeConstant,
+					order, zeroPhase, outputDirectory);
+
+			long start = System.nanoTime();
+
+			List<LogSummary> summaries = processor.processAll(logs, threads);
+
+			writeSummaries(summaries, new File(outputDirectory, SUMMARY_FILE));
+
+			System.out.println("Filtered " + summaries.size() + " of "
+					+ logs.size() + " logs in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+
+			if (summaries.size() < logs.size())
+			{
+				System.exit(1);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+
+			System.exit(1);
+		}
+		catch (InterruptedException e)
+		{
+			System.exit(1);
+		}
+	}
+
+	private static void findLogs(File path, File exclude, Set<String> names,
+			List<File> logs) throws IOException
+	{
+		if (path.isDirectory())
+		{
+			if (path.getCanonicalFile().equals(exclude))
+			{
+				return;
+			}
+
+			File[] files = path.listFiles();
+
+			if (files == null)
+			{
+				throw new IOException("Can't list " + path);
+			}
+
+			Arrays.sort(files);
+
+			for (File file : files)
+			{
+				findLogs(file, exclude, names, logs);
+			}
+		}
+		else if (LogFiles.isLog(path))
+		{
+			if (names.add(path.getName()))
+			{
+				logs.add(path);
+			}
+			else
+			{
+				System.err.println(path + ": skipped, a log of the same name "
+						+ "was already found");
+			}
+		}
+	}
+
+	/**
+	 * Filter a block of a log with whichever filter is in use, at the rate
+	 * measured from the log as the app does.
+	 */
+	private static void filter(LowPassFilter lpf,
+			ButterworthFilter butterworth, RateEstimator rateEstimator,
+			long[] timestamps, float[] acceleration, float[] lpfAcceleration,
+			int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			rateEstimator.addSample(timestamps[i]);
+		}
+
+		float frequency = rateEstimator.getFrequency();
+
+		if (lpf != null)
+		{
+			if (frequency > 0)
+			{
+				lpf.setSampleRate(frequency);
+			}
+
+			lpf.addSamples(acceleration, timestamps, length, lpfAcceleration);
+		}
+		else
+		{
+			if (frequency > 0)
+			{
+				butterworth.setSampleRate(frequency);
+			}
+
+			butterworth.addSamples(acceleration, timestamps, length,
+					lpfAcceleration);
+		}
+	}
+
+	/**
+	 * Write the buffered bytes out to the file.
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+}
@@ -0,0 +1,211 @@
+package com.kircherelectronics.lowpasslinearacceleration.batch;
+
+import java.util.Locale;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Summary statistics of one filtered log: its length and sample rate, the
+ * mean of the raw acceleration of each axis (the gravity it was held at), and
+ * the RMS and peak of the linear acceleration of each axis. Samples are added
+ * in blocks as the log is filtered, so the log is only read once.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class LogSummary
+{
+	public final static String SEPARATOR = ",";
+
+	private final String name;
+
+	private long records = 0;
+
+	private long firstTimestamp = 0;
+	private long lastTimestamp = 0;
+
+	private final double[] sum = new double[3];
+	private final double[] sumSquares = new double[3];
+
+	private final float[] peak = new float[3];
+
+	private float peakMagnitude = 0;
+
+	/**
+	 * Create a new summary.
+	 *
+	 * @param name
+	 *            The name of the log.
+	 */
+	public LogSummary(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Get the header of the summary table.
+	 *
+	 * @return Returns the column titles.
+	 */
+	public static String getHeader()
+	{
+		String headers = "File" + SEPARATOR;
+
+		headers += "Records" + SEPARATOR;
+		headers += "Duration" + SEPARATOR;
+		headers += "Frequency" + SEPARATOR;
+
+		headers += "MeanAX" + SEPARATOR;
+		headers += "MeanAY" + SEPARATOR;
+		headers += "MeanAZ" + SEPARATOR;
+
+		headers += "RmsLPFX" + SEPARATOR;
+		headers += "RmsLPFY" + SEPARATOR;
+		headers += "RmsLPFZ" + SEPARATOR;
+
+		headers += "PeakLPFX" + SEPARATOR;
+		headers += "PeakLPFY" + SEPARATOR;
+		headers += "PeakLPFZ" + SEPARATOR;
+
+		headers += "PeakLPF";
+
+		return headers;
+	}
+
+	/**
+	 * Add a block of filtered samples.
+	 *
+	 * @param timestamps
+	 *            The time of each sample in nanoseconds.
+	 * @param acceleration
+	 *            The interleaved raw acceleration.
+	 * @param linearAcceleration
+	 *            The interleaved linear acceleration.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public void addSamples(long[] timestamps, float[] acceleration,
+			float[] linearAcceleration, int length)
+	{
+		if (length == 0)
+		{
+			return;
+		}
+
+		if (records == 0)
+		{
+			firstTimestamp = timestamps[0];
+		}
+
+		for (int i = 0, j = 0; i < length; i++, j += 3)
+		{
+			float magnitude = 0;
+
+			for (int k = 0; k < 3; k++)
+			{
+				float linear = linearAcceleration[j + k];
+
+				sum[k] += acceleration[j + k];
+				sumSquares[k] += linear * linear;
+
+				peak[k] = Math.max(peak[k], Math.abs(linear));
+
+				magnitude += linear * linear;
+			}
+
+			peakMagnitude = Math.max(peakMagnitude, magnitude);
+		}
+
+		lastTimestamp = timestamps[length - 1];
+
+		records += length;
+	}
+
+	/**
+	 * Get the number of records in the log.
+	 *
+	 * @return Returns the record count.
+	 */
+	public long getRecords()
+	{
+		return records;
+	}
+
+	/**
+	 * Get the time from the first record to the last.
+	 *
+	 * @return Returns the duration in seconds.
+	 */
+	public double getDuration()
+	{
+		return (lastTimestamp - firstTimestamp) / 1000000000.0;
+	}
+
+	/**
+	 * Get the mean sample rate of the log.
+	 *
+	 * @return Returns the sample rate in Hz, or zero if it can't be known.
+	 */
+	public double getFrequency()
+	{
+		double duration = getDuration();
+
+		return duration > 0 ? (records - 1) / duration : 0;
+	}
+
+	/**
+	 * Write the summary as a row of the summary table.
+	 *
+	 * @return Returns the row.
+	 */
+	public String toRow()
+	{
+		StringBuilder row = new StringBuilder(256);
+
+		row.append(name).append(SEPARATOR);
+		row.append(records).append(SEPARATOR);
+		append(row, getDuration());
+		append(row, getFrequency());
+
+		for (int k = 0; k < 3; k++)
+		{
+			append(row, records > 0 ? sum[k] / records : 0);
+		}
+
+		for (int k = 0; k < 3; k++)
+		{
+			append(row, records > 0 ? Math.sqrt(sumSquares[k] / records) : 0);
+		}
+
+		for (int k = 0; k < 3; k++)
+		{
+			append(row, peak[k]);
+		}
+
+		row.append(String.format(Locale.US, "%.6f",
+				Math.sqrt(peakMagnitude)));
+
+		return row.toString();
+	}
+
+	private static void append(StringBuilder row, double value)
+	{
+		row.append(String.format(Locale.US, "%.6f", value)).append(SEPARATOR);
+	}
+}
@@ -0,0 +1,225 @@
+package com.kircherelectronics.lowpasslinearacceleration.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A preallocated, lock-free ring of timestamped samples for passing raw and
+ * filtered acceleration from one producer thread (the sensor callback) to one
+ * consumer thread (the UI). The producer never blocks or allocates; if the
+ * consumer falls so far behind that the ring is full, new samples are dropped
+ * and counted instead of overwriting samples the consumer may be reading.
+ *
+ * Only one thread may call offer() and only one thread may call drain().
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class SampleRingBuffer
+{
+	private final int capacity;
+	private final int mask;
+
+	private final long[] timestamps;
+	private final float[] rawAcceleration;
+	private final float[] lpfAcceleration;
+
+	// The sequence of the next sample to be written, only advanced by the
+	// producer.
+	private final AtomicLong head = new AtomicLong();
+
+	// The sequence of the next sample to be read, only advanced by the
+	// consumer.
+	private final AtomicLong tail = new AtomicLong();
+
+	// The producer's last view of the tail, so it only has to read the
+	// consumer's counter when the ring looks full.
+	private long tailCache = 0;
+
+	// The number of samples dropped because the ring was full, only written
+	// by the producer.
+	private volatile int dropped = 0;
+
+	/**
+	 * Create a new ring buffer.
+	 *
+	 * @param capacity
+	 *            The number of samples the ring can hold. It is rounded up to
+	 *            a power of two.
+	 */
+	public SampleRingBuffer(int capacity)
+	{
+		int size = 1;
+
+		while (size < capacity)
+		{
+			size <<= 1;
+		}
+
+		this.capacity = size;
+		this.mask = size - 1;
+
+		timestamps = new long[size];
+		rawAcceleration = new float[size * 3];
+		lpfAcceleration = new float[size * 3];
+	}
+
+	/**
+	 * Publish a sample. Called by the producer only.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param rawAcceleration
+	 *            The raw acceleration.
+	 * @param lpfAcceleration
+	 *            The low-pass filtered linear acceleration.
+	 * @return Returns false if the ring was full and the sample was dropped.
+	 */
+	public boolean offer(long timestamp, float[] rawAcceleration,
+			float[] lpfAcceleration)
+	{
+		return offer(timestamp, rawAcceleration, lpfAcceleration, 0);
+	}
+
+	/**
+	 * Publish a sample out of a block of interleaved samples. Called by the
+	 * producer only.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param rawAcceleration
+	 *            The interleaved raw acceleration.
+	 * @param lpfAcceleration
+	 *            The interleaved low-pass filtered linear acceleration.
+	 * @param offset
+	 *            The index of the x axis of the sample in both arrays.
+	 * @return Returns false if the ring was full and the sample was dropped.
+	 */
+	public boolean offer(long timestamp, float[] rawAcceleration,
+			float[] lpfAcceleration, int offset)
+	{
+		long head = this.head.get();
+
+		if (head - tailCache >= capacity)
+		{
+			tailCache = tail.get();
+
+			if (head - tailCache >= capacity)
+			{
+				dropped++;
+
+				return false;
+			}
+		}
+
+		int index = (int) head & mask;
+		int slot = index * 3;
+
+		timestamps[index] = timestamp;
+
+		this.rawAcceleration[slot] = rawAcceleration[offset];
+		this.rawAcceleration[slot + 1] = rawAcceleration[offset + 1];
+		this.rawAcceleration[slot + 2] = rawAcceleration[offset + 2];
+
+		this.lpfAcceleration[slot] = lpfAcceleration[offset];
+		this.lpfAcceleration[slot + 1] = lpfAcceleration[offset + 1];
+		this.lpfAcceleration[slot + 2] = lpfAcceleration[offset + 2];
+
+		// Make the sample visible to the consumer only after it is written.
+		this.head.lazySet(head + 1);
+
+		return true;
+	}
+
+	/**
+	 * Copy out every sample published since the last drain, oldest first, up
+	 * to the length of the timestamps array. Called by the consumer only.
+	 *
+	 * @param timestamps
+	 *            The array to write the timestamps to.
+	 * @param rawAcceleration
+	 *            The array to write the interleaved raw acceleration to. It
+	 *            must hold three values per timestamp.
+	 * @param lpfAcceleration
+	 *            The array to write the interleaved linear acceleration to.
+	 *            It must hold three values per timestamp.
+	 * @return Returns the number of samples copied.
+	 */
+	public int drain(long[] timestamps, float[] rawAcceleration,
+			float[] lpfAcceleration)
+	{
+		long tail = this.tail.get();
+
+		int length = (int) Math.min(head.get() - tail, timestamps.length);
+
+		for (int i = 0; i < length; i++)
+		{
+			int index = (int) (tail + i) & mask;
+			int offset = index * 3;
+			int j = i * 3;
+
+			timestamps[i] = this.timestamps[index];
+
+			rawAcceleration[j] = this.rawAcceleration[offset];
+			rawAcceleration[j + 1] = this.rawAcceleration[offset + 1];
+			rawAcceleration[j + 2] = this.rawAcceleration[offset + 2];
+
+			lpfAcceleration[j] = this.lpfAcceleration[offset];
+			lpfAcceleration[j + 1] = this.lpfAcceleration[offset + 1];
+			lpfAcceleration[j + 2] = this.lpfAcceleration[offset + 2];
+		}
+
+		// Hand the slots back to the producer only after they are read.
+		this.tail.lazySet(tail + length);
+
+		return length;
+	}
+
+	/**
+	 * Find out if there are no samples waiting to be drained. Called by the
+	 * consumer only.
+	 *
+	 * @return Returns true if the ring is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return head.get() == tail.get();
+	}
+
+	/**
+	 * Get the number of samples the ring can hold.
+	 *
+	 * @return Returns the capacity.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Get the number of samples dropped because the ring was full.
+	 *
+	 * @return Returns the dropped sample count.
+	 */
+	public int getDropped()
+	{
+		return dropped;
+	}
+}
@@ -0,0 +1,194 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs a cascade of second order IIR sections (biquads) over each channel of
+ * an interleaved stream, such as the x, y and z axes of an accelerometer.
+ * Each section is in transposed direct form II, y = b0 * x + s1, s1 = b1 * x -
+ * a1 * y + s2, s2 = b2 * x - a2 * y, which needs two state variables per
+ * section and channel. The state and coefficients are kept in doubles since
+ * the poles of a low cutoff are too close to the unit circle for floats.
+ *
+ * The coefficients can be replaced at any time without resetting the state,
+ * so a change in the sample rate doesn't interrupt the output. Filtering
+ * never allocates.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class BiquadCascade
+{
+	// The coefficients of each section, b0, b1, b2, a1, a2
+	public final static int COEFFICIENTS_PER_SECTION = 5;
+
+	private final int channels;
+	private final int maxSections;
+
+	private double[] coefficients = new double[0];
+
+	private int sections = 0;
+
+	// s1 and s2 of each channel of each section
+	private final double[] state;
+
+	/**
+	 * Create a new cascade.
+	 *
+	 * @param channels
+	 *            The number of interleaved channels.
+	 * @param maxSections
+	 *            The most sections the coefficients may have.
+	 */
+	public BiquadCascade(int channels, int maxSections)
+	{
+		this.channels = channels;
+		this.maxSections = maxSections;
+
+		state = new double[maxSections * channels * 2];
+	}
+
+	/**
+	 * Set the coefficients of the sections. The array is not copied, so it
+	 * must not be changed while the cascade uses it.
+	 *
+	 * @param coefficients
+	 *            The b0, b1, b2, a1 and a2 of each section in turn.
+	 */
+	public void setCoefficients(double[] coefficients)
+	{
+		int sections = coefficients.length / COEFFICIENTS_PER_SECTION;
+
+		if (sections > maxSections)
+		{
+			throw new IllegalArgumentException("More than " + maxSections
+					+ " sections");
+		}
+
+		this.coefficients = coefficients;
+		this.sections = sections;
+	}
+
+	/**
+	 * Get the number of sections of the current coefficients.
+	 *
+	 * @return Returns the section count.
+	 */
+	public int getSections()
+	{
+		return sections;
+	}
+
+	/**
+	 * Filter a block of samples.
+	 *
+	 * @param input
+	 *            The interleaved samples.
+	 * @param inputOffset
+	 *            The index of the first channel of the first sample in input.
+	 * @param output
+	 *            The array to write the interleaved output to. It may be the
+	 *            same array as input.
+	 * @param outputOffset
+	 *            The index to write the first channel of the first sample to.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public void filter(float[] input, int inputOffset, float[] output,
+			int outputOffset, int length)
+	{
+		double[] coefficients = this.coefficients;
+		double[] state = this.state;
+
+		for (int i = 0; i < length; i++)
+		{
+			for (int c = 0; c < channels; c++)
+			{
+				double x = input[inputOffset + c];
+
+				for (int s = 0; s < sections; s++)
+				{
+					int k = s * COEFFICIENTS_PER_SECTION;
+					int j = (s * channels + c) * 2;
+
+					double y = coefficients[k] * x + state[j];
+
+					state[j] = coefficients[k + 1] * x - coefficients[k + 3]
+							* y + state[j + 1];
+					state[j + 1] = coefficients[k + 2] * x
+							- coefficients[k + 4] * y;
+
+					x = y;
+				}
+
+				output[outputOffset + c] = (float) x;
+			}
+
+			inputOffset += channels;
+			outputOffset += channels;
+		}
+	}
+
+	/**
+	 * Clear the state, as if the input had always been zero.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < state.length; i++)
+		{
+			state[i] = 0;
+		}
+	}
+
+	/**
+	 * Set the state as if the input had always been a constant value, so the
+	 * output starts settled instead of ringing up from zero. This is the warm
+	 * start of the cascade.
+	 *
+	 * @param value
+	 *            The constant value of each channel.
+	 */
+	public void reset(float[] value)
+	{
+		for (int c = 0; c < channels; c++)
+		{
+			double x = value[c];
+
+			for (int s = 0; s < sections; s++)
+			{
+				int k = s * COEFFICIENTS_PER_SECTION;
+				int j = (s * channels + c) * 2;
+
+				double b0 = coefficients[k];
+				double b1 = coefficients[k + 1];
+				double b2 = coefficients[k + 2];
+				double a1 = coefficients[k + 3];
+				double a2 = coefficients[k + 4];
+
+				// The steady output of the section for a constant input.
+				double y = x * (b0 + b1 + b2) / (1 + a1 + a2);
+
+				state[j + 1] = b2 * x - a2 * y;
+				state[j] = b1 * x - a1 * y + state[j + 1];
+
+				x = y;
+			}
+		}
+	}
+}
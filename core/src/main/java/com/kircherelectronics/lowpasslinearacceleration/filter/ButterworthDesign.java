@@ -0,0 +1,223 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Designs Butterworth low-pass and high-pass filters as cascades of biquad
+ * sections for a BiquadCascade. The analog prototype is mapped with the
+ * bilinear transform, prewarped so the cutoff lands exactly where it was
+ * asked for. An odd order ends with a first order section.
+ *
+ * A design only depends on the ratio of the cutoff to the sample rate, so
+ * designs are cached by type, order and that ratio, and going back to a rate
+ * or cutoff that was used before doesn't design the filter again. The ratio
+ * is rounded to a float for the cache, a relative error of no more than one
+ * part in ten million however low the cutoff, and the filter is designed for
+ * the rounded ratio.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public final class ButterworthDesign
+{
+	public final static int LOW_PASS = 0;
+	public final static int HIGH_PASS = 1;
+
+	public final static int MAX_ORDER = 8;
+
+	// The number of designs kept, a power of two
+	private static final int CACHE_SIZE = 32;
+
+	// How many slots are searched for a design before one is replaced
+	private static final int CACHE_PROBES = 4;
+
+	// Cutoffs are kept below the Nyquist frequency by this fraction of the
+	// sample rate
+	private static final double MAX_CUTOFF = 0.49;
+
+	// The keys of the cached designs, zero for an empty slot
+	private static final long[] keys = new long[CACHE_SIZE];
+	private static final double[][] designs = new double[CACHE_SIZE][];
+
+	/**
+	 * Get the coefficients of a Butterworth filter, designing it only if it
+	 * isn't cached. The coefficients are shared, so they must not be changed.
+	 *
+	 * @param type
+	 *            LOW_PASS or HIGH_PASS.
+	 * @param order
+	 *            The order, from 1 to MAX_ORDER.
+	 * @param cutoff
+	 *            The -3 dB frequency in Hz.
+	 * @param sampleRate
+	 *            The sample rate in Hz.
+	 * @return Returns the b0, b1, b2, a1 and a2 of each section in turn.
+	 */
+	public static synchronized double[] getCoefficients(int type, int order,
+			float cutoff, float sampleRate)
+	{
+		if (type != LOW_PASS && type != HIGH_PASS)
+		{
+			throw new IllegalArgumentException("Unknown filter type " + type);
+		}
+
+		if (order < 1 || order > MAX_ORDER)
+		{
+			throw new IllegalArgumentException("Order must be from 1 to "
+					+ MAX_ORDER);
+		}
+
+		if (!(sampleRate > 0) || Float.isInfinite(sampleRate))
+		{
+			throw new IllegalArgumentException("Invalid sample rate "
+					+ sampleRate);
+		}
+
+		if (!(cutoff > 0))
+		{
+			throw new IllegalArgumentException("Invalid cutoff " + cutoff);
+		}
+
+		// Keep the cutoff below the Nyquist frequency.
+		float ratio = (float) Math.min((double) cutoff / sampleRate,
+				MAX_CUTOFF);
+
+		// The ratio is positive, so the key is never zero.
+		long key = ((long) Float.floatToIntBits(ratio) << 32) | (order << 1)
+				| type;
+
+		// Spread the key over the slots with a multiplicative hash.
+		int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+
+		int home = (hash >>> 27) & (CACHE_SIZE - 1);
+
+		for (int i = 0; i < CACHE_PROBES; i++)
+		{
+			int slot = (home + i) & (CACHE_SIZE - 1);
+
+			if (keys[slot] == key)
+			{
+				return designs[slot];
+			}
+
+			if (keys[slot] == 0)
+			{
+				home = slot;
+
+				break;
+			}
+		}
+
+		double[] design = design(type, order, ratio, 1);
+
+		keys[home] = key;
+		designs[home] = design;
+
+		return design;
+	}
+
+	/**
+	 * Get the number of biquad sections of a filter.
+	 *
+	 * @param order
+	 *            The order of the filter.
+	 * @return Returns the section count.
+	 */
+	public static int getSections(int order)
+	{
+		return (order + 1) / 2;
+	}
+
+	/**
+	 * Design a Butterworth filter without the cache.
+	 *
+	 * @param type
+	 *            LOW_PASS or HIGH_PASS.
+	 * @param order
+	 *            The order.
+	 * @param cutoff
+	 *            The -3 dB frequency in Hz, below half the sample rate.
+	 * @param sampleRate
+	 *            The sample rate in Hz.
+	 * @return Returns the b0, b1, b2, a1 and a2 of each section in turn.
+	 */
+	static double[] design(int type, int order, double cutoff,
+			double sampleRate)
+	{
+		double[] coefficients = new double[getSections(order)
+				* BiquadCascade.COEFFICIENTS_PER_SECTION];
+
+		// The prewarped analog cutoff
+		double k = Math.tan(Math.PI * cutoff / sampleRate);
+		double k2 = k * k;
+
+		int offset = 0;
+
+		for (int i = 0; i < order / 2; i++)
+		{
+			// The quality factor of each pole pair of the prototype
+			double q = 1 / (2 * Math.sin(Math.PI * (2 * i + 1) / (2 * order)));
+
+			double norm = 1 / (1 + k / q + k2);
+
+			if (type == LOW_PASS)
+			{
+				coefficients[offset] = k2 * norm;
+				coefficients[offset + 1] = 2 * k2 * norm;
+				coefficients[offset + 2] = k2 * norm;
+			}
+			else
+			{
+				coefficients[offset] = norm;
+				coefficients[offset + 1] = -2 * norm;
+				coefficients[offset + 2] = norm;
+			}
+
+			coefficients[offset + 3] = 2 * (k2 - 1) * norm;
+			coefficients[offset + 4] = (1 - k / q + k2) * norm;
+
+			offset += BiquadCascade.COEFFICIENTS_PER_SECTION;
+		}
+
+		// The real pole of an odd order
+		if (order % 2 == 1)
+		{
+			double norm = 1 / (1 + k);
+
+			if (type == LOW_PASS)
+			{
+				coefficients[offset] = k * norm;
+				coefficients[offset + 1] = k * norm;
+			}
+			else
+			{
+				coefficients[offset] = norm;
+				coefficients[offset + 1] = -norm;
+			}
+
+			coefficients[offset + 3] = (k - 1) * norm;
+		}
+
+		return coefficients;
+	}
+
+	private ButterworthDesign()
+	{
+	}
+}
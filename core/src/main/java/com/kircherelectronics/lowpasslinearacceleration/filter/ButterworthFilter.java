@@ -0,0 +1,278 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Separates gravity from linear acceleration with a Butterworth low-pass
+ * filter of configurable order, run as a cascade of biquads on each axis.
+ * The single pole of LowPassFilter rolls off at 20 dB per decade, so
+ * vibration well above the cutoff still leaks into its gravity estimate. A
+ * fourth order Butterworth rolls off at 80 dB per decade with a flat pass
+ * band.
+ *
+ * The cutoff is set from a time constant, fc = 1 / (2 * pi * timeConstant),
+ * so it can be swapped in for LowPassFilter with the same setting. The
+ * filter is designed for the sample rate measured by the sensor hub, or
+ * estimated from the timestamps until a rate is set, and is only designed
+ * again when the rate moves by more than 1%. Designs come from the cache of
+ * ButterworthDesign, and filtering never allocates.
+ *
+ * Gravity is the mean of the first samples, until there are enough of them
+ * and the rate is known. The filter then starts settled on that mean, so the
+ * output is useful from the first sample.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class ButterworthFilter
+{
+	private static final String tag = ButterworthFilter.class.getSimpleName();
+
+	public final static int DEFAULT_ORDER = 4;
+
+	// How far the sample rate may move before the filter is designed again
+	private static final float RATE_TOLERANCE = 0.01f;
+
+	private final BiquadCascade cascade = new BiquadCascade(3,
+			ButterworthDesign.getSections(ButterworthDesign.MAX_ORDER));
+
+	// Estimates the sample rate until one is set
+	private final RateEstimator rateEstimator = new RateEstimator();
+
+	private float timeConstant = 1;
+
+	private int order = DEFAULT_ORDER;
+
+	// The sample rate set from outside, or zero to estimate it
+	private float sampleRate = 0;
+
+	// The sample rate the filter is designed for, or zero if it isn't
+	// designed yet
+	private float designRate = 0;
+
+	// The number of samples averaged into gravity before the filter was
+	// designed
+	private int count = 0;
+
+	private final float[] gravity = new float[3];
+
+	/**
+	 * Filter a block of samples.
+	 *
+	 * @param samples
+	 *            The interleaved acceleration data, x0, y0, z0, x1, y1, z1...
+	 * @param timestamps
+	 *            The time of each sample in nanoseconds.
+	 * @param length
+	 *            The number of samples in the block.
+	 * @param output
+	 *            The array to write the interleaved linear acceleration to.
+	 *            It must hold at least 3 * length values and may be the same
+	 *            array as samples.
+	 */
+	public void addSamples(float[] samples, long[] timestamps, int length,
+			float[] output)
+	{
+		for (int i = 0, j = 0; i < length; i++, j += 3)
+		{
+			float x = samples[j];
+			float y = samples[j + 1];
+			float z = samples[j + 2];
+
+			if (designRate == 0)
+			{
+				if (sampleRate == 0)
+				{
+					rateEstimator.addSample(timestamps[i]);
+				}
+
+				// Average gravity until the filter can be designed.
+				float weight = 1f / ++count;
+
+				gravity[0] += (x - gravity[0]) * weight;
+				gravity[1] += (y - gravity[1]) * weight;
+				gravity[2] += (z - gravity[2]) * weight;
+
+				if (count >= LowPassFilter.DEFAULT_WARM_START)
+				{
+					updateDesign();
+				}
+			}
+			else
+			{
+				cascade.filter(samples, j, gravity, 0, 1);
+			}
+
+			output[j] = x - gravity[0];
+			output[j + 1] = y - gravity[1];
+			output[j + 2] = z - gravity[2];
+		}
+	}
+
+	/**
+	 * Set the sample rate measured from the sensor. The filter is only
+	 * designed again if the rate has moved by more than 1%.
+	 *
+	 * @param frequency
+	 *            The sample rate in Hz, or zero to estimate it from the
+	 *            timestamps.
+	 */
+	public void setSampleRate(float frequency)
+	{
+		sampleRate = frequency;
+
+		if (designRate > 0 && frequency > 0
+				&& Math.abs(frequency - designRate) > designRate
+						* RATE_TOLERANCE)
+		{
+			updateDesign();
+		}
+	}
+
+	/**
+	 * Set the time constant the cutoff is derived from.
+	 *
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 */
+	public void setTimeConstant(float timeConstant)
+	{
+		this.timeConstant = timeConstant;
+
+		if (designRate > 0)
+		{
+			updateDesign();
+		}
+	}
+
+	/**
+	 * Set the order of the filter.
+	 *
+	 * @param order
+	 *            The order, from 1 to ButterworthDesign.MAX_ORDER.
+	 */
+	public void setOrder(int order)
+	{
+		if (order < 1 || order > ButterworthDesign.MAX_ORDER)
+		{
+			throw new IllegalArgumentException("Order must be from 1 to "
+					+ ButterworthDesign.MAX_ORDER);
+		}
+
+		if (order == this.order)
+		{
+			return;
+		}
+
+		this.order = order;
+
+		if (designRate > 0)
+		{
+			updateDesign();
+
+			// The sections of the new design don't match the old state.
+			cascade.reset(gravity);
+		}
+	}
+
+	/**
+	 * Get the current gravity estimate.
+	 *
+	 * @return Returns the gravity estimate. It is overwritten by the next
+	 *         sample.
+	 */
+	public float[] getGravity()
+	{
+		return gravity;
+	}
+
+	/**
+	 * Find out if there is a gravity estimate yet.
+	 *
+	 * @return Returns true once the filter has seen a sample or was seeded.
+	 */
+	public boolean hasGravity()
+	{
+		return designRate > 0 || count > 0;
+	}
+
+	/**
+	 * Seed gravity from an estimate, such as one from another filter. The
+	 * filter carries on settled on it.
+	 *
+	 * @param gravity
+	 *            The gravity estimate.
+	 */
+	public void setGravity(float[] gravity)
+	{
+		System.arraycopy(gravity, 0, this.gravity, 0, this.gravity.length);
+
+		// The estimate stands in for the warm start if the filter isn't
+		// designed yet.
+		count = LowPassFilter.DEFAULT_WARM_START;
+
+		if (designRate > 0)
+		{
+			cascade.reset(this.gravity);
+		}
+	}
+
+	public void reset()
+	{
+		designRate = 0;
+		count = 0;
+
+		gravity[0] = 0;
+		gravity[1] = 0;
+		gravity[2] = 0;
+
+		cascade.reset();
+		rateEstimator.reset();
+	}
+
+	/**
+	 * Design the filter for the current rate, time constant and order if the
+	 * rate is known. The first design starts settled on the averaged
+	 * gravity.
+	 */
+	private void updateDesign()
+	{
+		float rate = sampleRate > 0 ? sampleRate : rateEstimator
+				.getFrequency();
+
+		if (rate <= 0)
+		{
+			return;
+		}
+
+		float cutoff = (float) (1 / (2 * Math.PI * timeConstant));
+
+		cascade.setCoefficients(ButterworthDesign.getCoefficients(
+				ButterworthDesign.LOW_PASS, order, cutoff, rate));
+
+		if (designRate == 0)
+		{
+			cascade.reset(gravity);
+		}
+
+		designRate = rate;
+	}
+}
@@ -0,0 +1,378 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs the single pole low-pass filter of LowPassFilter over many
+ * accelerometer streams at once, such as the devices a server is listening
+ * to. A channel is one stream of xyz samples, and each channel has its own
+ * time constant and warm start.
+ *
+ * The gravity estimate and the gain of every axis of every channel are kept
+ * side by side in flat arrays rather than in one object per stream. A time
+ * step of all channels is then one loop over plain arrays with no branches,
+ * which the JIT can unroll and vectorize. The filter is written as gravity +=
+ * (x - gravity) * gain, with gain = 1 - alpha, so the warm start mean is the
+ * same loop with a gain of 1 / n.
+ *
+ * The channels share a sample rate, set from outside, since the streams are
+ * stepped together. Filtering never allocates.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class FilterBank
+{
+	private static final String tag = FilterBank.class.getSimpleName();
+
+	private final int channels;
+
+	// The number of values of a time step, three axes of each channel
+	private final int width;
+
+	// The time constant of each channel in seconds
+	private final float[] timeConstants;
+
+	// The gain of each axis of each channel
+	private final float[] gains;
+
+	// The gravity estimate of each axis of each channel
+	private final float[] gravity;
+
+	// The number of samples each channel has averaged in its warm start
+	private final int[] counts;
+
+	// The number of channels still in their warm start
+	private int warming;
+
+	private int warmStart = LowPassFilter.DEFAULT_WARM_START;
+
+	// The sample period in seconds
+	private double period;
+
+	/**
+	 * Create a new filter bank with a time constant of one second on every
+	 * channel.
+	 *
+	 * @param channels
+	 *            The number of xyz streams.
+	 * @param sampleRate
+	 *            The sample rate of the streams in Hz.
+	 */
+	public FilterBank(int channels, float sampleRate)
+	{
+		if (channels < 1)
+		{
+			throw new IllegalArgumentException("Invalid channel count "
+					+ channels);
+		}
+
+		this.channels = channels;
+
+		width = channels * 3;
+
+		timeConstants = new float[channels];
+		gains = new float[width];
+		gravity = new float[width];
+		counts = new int[channels];
+
+		for (int c = 0; c < channels; c++)
+		{
+			timeConstants[c] = 1;
+		}
+
+		setSampleRate(sampleRate);
+
+		reset();
+	}
+
+	/**
+	 * Filter one time step of every channel.
+	 *
+	 * @param samples
+	 *            The acceleration of each channel in turn, x0, y0, z0, x1,
+	 *            y1, z1...
+	 * @param output
+	 *            The array to write the linear acceleration to, laid out like
+	 *            samples. It may be the same array as samples.
+	 */
+	public void addSamples(float[] samples, float[] output)
+	{
+		addSamples(samples, 1, output);
+	}
+
+	/**
+	 * Filter several time steps of every channel.
+	 *
+	 * @param samples
+	 *            The time steps in turn, each laid out as the acceleration of
+	 *            each channel in turn.
+	 * @param length
+	 *            The number of time steps.
+	 * @param output
+	 *            The array to write the linear acceleration to, laid out like
+	 *            samples. It may be the same array as samples.
+	 */
+	public void addSamples(float[] samples, int length, float[] output)
+	{
+		float[] gains = this.gains;
+		float[] gravity = this.gravity;
+
+		int width = this.width;
+
+		for (int i = 0, offset = 0; i < length; i++, offset += width)
+		{
+			// Kept free of branches and calls so it can be vectorized.
+			for (int j = 0; j < width; j++)
+			{
+				float x = samples[offset + j];
+				float g = gravity[j] + (x - gravity[j]) * gains[j];
+
+				gravity[j] = g;
+				output[offset + j] = x - g;
+			}
+
+			if (warming > 0)
+			{
+				updateWarmStart();
+			}
+		}
+	}
+
+	/**
+	 * Set the sample rate of the streams.
+	 *
+	 * @param frequency
+	 *            The sample rate in Hz.
+	 */
+	public void setSampleRate(float frequency)
+	{
+		if (!(frequency > 0))
+		{
+			throw new IllegalArgumentException("Invalid sample rate "
+					+ frequency);
+		}
+
+		period = 1.0 / frequency;
+
+		for (int c = 0; c < channels; c++)
+		{
+			updateGain(c);
+		}
+	}
+
+	/**
+	 * Set the time constant of every channel.
+	 *
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 */
+	public void setTimeConstant(float timeConstant)
+	{
+		for (int c = 0; c < channels; c++)
+		{
+			setTimeConstant(c, timeConstant);
+		}
+	}
+
+	/**
+	 * Set the time constant of one channel.
+	 *
+	 * @param channel
+	 *            The channel.
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 */
+	public void setTimeConstant(int channel, float timeConstant)
+	{
+		timeConstants[channel] = timeConstant;
+
+		updateGain(channel);
+	}
+
+	/**
+	 * Get the time constant of one channel.
+	 *
+	 * @param channel
+	 *            The channel.
+	 * @return Returns the time constant in seconds.
+	 */
+	public float getTimeConstant(int channel)
+	{
+		return timeConstants[channel];
+	}
+
+	/**
+	 * Set how many samples of a channel are averaged to seed its gravity
+	 * after a reset. Channels that have already averaged that many carry on
+	 * filtering.
+	 *
+	 * @param samples
+	 *            The number of samples to average, or zero to start from a
+	 *            gravity of zero.
+	 */
+	public void setWarmStart(int samples)
+	{
+		this.warmStart = samples;
+
+		warming = 0;
+
+		for (int c = 0; c < channels; c++)
+		{
+			if (counts[c] < warmStart)
+			{
+				warming++;
+			}
+
+			updateGain(c);
+		}
+	}
+
+	/**
+	 * Get the number of channels.
+	 *
+	 * @return Returns the channel count.
+	 */
+	public int getChannels()
+	{
+		return channels;
+	}
+
+	/**
+	 * Get the gravity estimates.
+	 *
+	 * @return Returns the gravity of each channel in turn, x0, y0, z0, x1,
+	 *         y1, z1... It is overwritten by the next time step.
+	 */
+	public float[] getGravity()
+	{
+		return gravity;
+	}
+
+	/**
+	 * Seed the gravity of one channel from an estimate, such as a snapshot of
+	 * a LowPassFilter. The channel carries on from it without a warm start.
+	 *
+	 * @param channel
+	 *            The channel.
+	 * @param gravity
+	 *            The gravity estimate.
+	 */
+	public void setGravity(int channel, float[] gravity)
+	{
+		System.arraycopy(gravity, 0, this.gravity, channel * 3, 3);
+
+		if (counts[channel] < warmStart)
+		{
+			warming--;
+		}
+
+		counts[channel] = Integer.MAX_VALUE;
+
+		updateGain(channel);
+	}
+
+	/**
+	 * Start one channel again, such as when a device reconnects.
+	 *
+	 * @param channel
+	 *            The channel.
+	 */
+	public void reset(int channel)
+	{
+		if (counts[channel] >= warmStart && warmStart > 0)
+		{
+			warming++;
+		}
+
+		counts[channel] = 0;
+
+		for (int j = channel * 3; j < channel * 3 + 3; j++)
+		{
+			gravity[j] = 0;
+		}
+
+		updateGain(channel);
+	}
+
+	/**
+	 * Start every channel again.
+	 */
+	public void reset()
+	{
+		for (int j = 0; j < width; j++)
+		{
+			gravity[j] = 0;
+		}
+
+		for (int c = 0; c < channels; c++)
+		{
+			counts[c] = 0;
+
+			updateGain(c);
+		}
+
+		warming = warmStart > 0 ? channels : 0;
+	}
+
+	/**
+	 * Count a sample into the warm start of each channel that is still in
+	 * it.
+	 */
+	private void updateWarmStart()
+	{
+		for (int c = 0; c < channels; c++)
+		{
+			if (counts[c] < warmStart)
+			{
+				if (++counts[c] == warmStart)
+				{
+					warming--;
+				}
+
+				updateGain(c);
+			}
+		}
+	}
+
+	/**
+	 * Compute the gain of one channel, the weight of the mean during its
+	 * warm start and 1 - alpha after it.
+	 *
+	 * @param channel
+	 *            The channel.
+	 */
+	private void updateGain(int channel)
+	{
+		float gain;
+
+		if (counts[channel] < warmStart)
+		{
+			gain = 1f / (counts[channel] + 1);
+		}
+		else
+		{
+			gain = (float) (period / (timeConstants[channel] + period));
+		}
+
+		gains[channel * 3] = gain;
+		gains[channel * 3 + 1] = gain;
+		gains[channel * 3 + 2] = gain;
+	}
+}
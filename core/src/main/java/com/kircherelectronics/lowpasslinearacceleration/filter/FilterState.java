@@ -0,0 +1,127 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A snapshot of a LowPassFilter, enough to carry on filtering where it left
+ * off: the gravity estimate, the last output, the sample period the
+ * coefficient is derived from and the time of the last sample. A snapshot can
+ * be reused for any number of saves so taking one never allocates.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class FilterState
+{
+	private final float[] gravity = new float[3];
+	private final float[] output = new float[3];
+
+	// The measured sample period in nanoseconds, or zero if the filter used
+	// the spacing of the timestamps
+	private long samplePeriod = 0;
+
+	// The spacing of the last two timestamps in nanoseconds
+	private long delta = 0;
+
+	private long timestamp = 0;
+
+	private int count = 0;
+
+	/**
+	 * Get the gravity estimate. The array may be written to.
+	 *
+	 * @return Returns the gravity estimate.
+	 */
+	public float[] getGravity()
+	{
+		return gravity;
+	}
+
+	/**
+	 * Get the last output of the filter. The array may be written to.
+	 *
+	 * @return Returns the linear acceleration.
+	 */
+	public float[] getOutput()
+	{
+		return output;
+	}
+
+	/**
+	 * Get the measured sample period.
+	 *
+	 * @return Returns the sample period in nanoseconds, or zero if the filter
+	 *         used the spacing of the timestamps.
+	 */
+	public long getSamplePeriod()
+	{
+		return samplePeriod;
+	}
+
+	public void setSamplePeriod(long samplePeriod)
+	{
+		this.samplePeriod = samplePeriod;
+	}
+
+	/**
+	 * Get the spacing of the last two timestamps.
+	 *
+	 * @return Returns the spacing in nanoseconds, or zero if it isn't known.
+	 */
+	public long getDelta()
+	{
+		return delta;
+	}
+
+	public void setDelta(long delta)
+	{
+		this.delta = delta;
+	}
+
+	/**
+	 * Get the time of the last sample.
+	 *
+	 * @return Returns the timestamp in nanoseconds.
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp)
+	{
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Get the number of samples the filter had seen since its last reset.
+	 *
+	 * @return Returns the sample count, or zero for a snapshot of a filter
+	 *         that hasn't started.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	public void setCount(int count)
+	{
+		this.count = count;
+	}
+}
@@ -0,0 +1,493 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An implementation of the Android Developer low-pass filter. The Android
+ * Developer LPF, is an IIR single-pole implementation. The coefficient, a
+ * (alpha), can be adjusted based on the sample period of the sensor to produce
+ * the desired time constant that the filter will act on. It is essentially the
+ * same as the Wikipedia LPF. It takes a simple form of y[0] = alpha * y[0] + (1
+ * - alpha) * x[0]. Alpha is defined as alpha = timeConstant / (timeConstant +
+ * dt) where the time constant is the length of signals the filter should act on
+ * and dt is the sample period (1/frequency) of the sensor.
+ * 
+ * 
+ * @author Kaleb
+ * @see http://developer.android.com/reference/android/hardware/SensorEvent.html
+ * @version %I%, %G%
+ */
+public class LowPassFilter
+{
+	private static final String tag = LowPassFilter.class.getSimpleName();
+	
+	// Nanoseconds per second for the sensor timestamps
+	private static final double NS2S = 1.0 / 1000000000.0;
+
+	// Enough samples to average out sensor noise in the warm start without
+	// holding up the output
+	public final static int DEFAULT_WARM_START = 10;
+
+	// Constants for the low-pass filters
+	private float timeConstant = 1f;
+	private float alpha = 0.9f;
+	private float dt = 0;
+
+	// Timestamps for the low-pass filters. These are kept as longs since a
+	// float cannot resolve nanosecond timestamps at typical device uptimes.
+	private long timestamp = 0;
+	private long startTime = 0;
+
+	// Averages the delivery rate for samples without a timestamp
+	private RateEstimator rateEstimator = new RateEstimator();
+
+	// The sample period the current coefficient was computed for
+	private long delta = 0;
+
+	// The measured sample period of the sensor in nanoseconds, or zero to
+	// use the spacing of each pair of timestamps
+	private long samplePeriod = 0;
+
+	private int count = 0;
+
+	// The number of samples averaged to seed gravity, or zero to start from
+	// the last estimate and skip the first few samples
+	private int warmStart = 0;
+
+	// Set when gravity was seeded from a saved estimate
+	private boolean seeded = false;
+
+	// Gravity and linear accelerations components for the
+	// Wikipedia low-pass filter
+	private float[] output = new float[]
+	{ 0, 0, 0 };
+	
+	private float[] gravity = new float[]
+	{ 0, 0, 0 };
+
+	// Raw accelerometer data
+	private float[] input = new float[]
+	{ 0, 0, 0 };
+
+	/**
+	 * Add a sample. The sample period is averaged from the time the samples
+	 * are delivered to the filter.
+	 * 
+	 * @param acceleration
+	 *            The acceleration data.
+	 * @return Returns the output of the filter.
+	 */
+	public float[] addSamples(float[] acceleration)
+	{
+		timestamp = System.nanoTime();
+
+		rateEstimator.addSample(timestamp);
+
+		count++;
+
+		// Find the sample period (between updates) from the average
+		// delivery rate.
+		dt = rateEstimator.getPeriod();
+
+		alpha = timeConstant / (timeConstant + dt);
+
+		return filter(acceleration);
+	}
+
+	/**
+	 * Add a sample with the time it was measured. The sample period is found
+	 * from the difference between this timestamp and the previous one, so the
+	 * output depends only on the data and not on when it is delivered to the
+	 * filter. Recorded samples can be replayed faster than real time and will
+	 * produce the same output every time.
+	 * 
+	 * @param acceleration
+	 *            The acceleration data.
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds, usually
+	 *            SensorEvent.timestamp.
+	 * @return Returns the output of the filter.
+	 */
+	public float[] addSamples(float[] acceleration, long timestamp)
+	{
+		if (count++ > 0)
+		{
+			long delta = timestamp - this.timestamp;
+
+			// Duplicate or out of order timestamps keep the last
+			// coefficient, as does a sample period that has not changed.
+			if (samplePeriod == 0 && delta > 0 && delta != this.delta)
+			{
+				updateAlpha(delta);
+			}
+		}
+		else
+		{
+			startTime = timestamp;
+		}
+
+		this.timestamp = timestamp;
+
+		return filter(acceleration);
+	}
+
+	/**
+	 * Filter a block of samples in one pass. This is intended for sensor FIFO
+	 * flushes and recorded logs where many samples arrive at once. The samples
+	 * are filtered exactly as if they had been added one at a time with
+	 * addSamples(float[], long), but nothing is copied or allocated and the
+	 * coefficient is only recomputed when the sample period changes.
+	 * 
+	 * @param samples
+	 *            The interleaved acceleration data, x0, y0, z0, x1, y1, z1...
+	 * @param timestamps
+	 *            The time of each sample in nanoseconds.
+	 * @param length
+	 *            The number of samples in the block.
+	 * @param output
+	 *            The array to write the interleaved linear acceleration to.
+	 *            It must hold at least 3 * length values and may be the same
+	 *            array as samples.
+	 */
+	public void addSamples(float[] samples, long[] timestamps, int length,
+			float[] output)
+	{
+		float alpha = this.alpha;
+
+		float gravityX = gravity[0];
+		float gravityY = gravity[1];
+		float gravityZ = gravity[2];
+
+		float outputX = this.output[0];
+		float outputY = this.output[1];
+		float outputZ = this.output[2];
+
+		long timestamp = this.timestamp;
+
+		for (int i = 0, j = 0; i < length; i++, j += 3)
+		{
+			if (count++ > 0)
+			{
+				long delta = timestamps[i] - timestamp;
+
+				if (samplePeriod == 0 && delta > 0 && delta != this.delta)
+				{
+					updateAlpha(delta);
+
+					alpha = this.alpha;
+				}
+			}
+			else
+			{
+				startTime = timestamps[i];
+			}
+
+			timestamp = timestamps[i];
+
+			float x = samples[j];
+			float y = samples[j + 1];
+			float z = samples[j + 2];
+
+			if (!seeded && count <= warmStart)
+			{
+				float weight = 1f / count;
+
+				gravityX += (x - gravityX) * weight;
+				gravityY += (y - gravityY) * weight;
+				gravityZ += (z - gravityZ) * weight;
+
+				outputX = x - gravityX;
+				outputY = y - gravityY;
+				outputZ = z - gravityZ;
+			}
+			else if (seeded || warmStart > 0 || count > 5)
+			{
+				gravityX = alpha * gravityX + (1 - alpha) * x;
+				gravityY = alpha * gravityY + (1 - alpha) * y;
+				gravityZ = alpha * gravityZ + (1 - alpha) * z;
+
+				outputX = x - gravityX;
+				outputY = y - gravityY;
+				outputZ = z - gravityZ;
+			}
+
+			output[j] = outputX;
+			output[j + 1] = outputY;
+			output[j + 2] = outputZ;
+		}
+
+		this.alpha = alpha;
+		this.timestamp = timestamp;
+
+		gravity[0] = gravityX;
+		gravity[1] = gravityY;
+		gravity[2] = gravityZ;
+
+		this.output[0] = outputX;
+		this.output[1] = outputY;
+		this.output[2] = outputZ;
+	}
+
+	/**
+	 * Seed gravity from the mean of the first samples after a reset instead
+	 * of waiting for the filter to converge from its last estimate. The
+	 * output is useful from the first sample rather than after several time
+	 * constants.
+	 * 
+	 * @param samples
+	 *            The number of samples to average, or zero to turn warm start
+	 *            off.
+	 */
+	public void setWarmStart(int samples)
+	{
+		this.warmStart = samples;
+	}
+
+	/**
+	 * Seed gravity from a saved estimate, such as one taken before the last
+	 * reset. The filter carries on from it without a warm start window.
+	 * 
+	 * @param gravity
+	 *            The gravity estimate.
+	 */
+	public void setGravity(float[] gravity)
+	{
+		System.arraycopy(gravity, 0, this.gravity, 0, this.gravity.length);
+
+		seeded = true;
+	}
+
+	/**
+	 * Get the current gravity estimate.
+	 * 
+	 * @return Returns the gravity estimate. It is overwritten by the next
+	 *         sample.
+	 */
+	public float[] getGravity()
+	{
+		return gravity;
+	}
+
+	/**
+	 * Find out if there is a gravity estimate yet.
+	 * 
+	 * @return Returns true once the filter has seen a sample or was seeded.
+	 */
+	public boolean hasGravity()
+	{
+		return seeded || count > 0;
+	}
+
+	/**
+	 * Take a snapshot of the filter, so it can carry on later from where it
+	 * is now.
+	 * 
+	 * @param state
+	 *            The snapshot to write to.
+	 */
+	public void saveState(FilterState state)
+	{
+		System.arraycopy(gravity, 0, state.getGravity(), 0, gravity.length);
+		System.arraycopy(output, 0, state.getOutput(), 0, output.length);
+
+		state.setSamplePeriod(samplePeriod);
+		state.setDelta(delta);
+		state.setTimestamp(timestamp);
+		state.setCount(count);
+	}
+
+	/**
+	 * Carry on from a snapshot of this or another filter. A filter that had
+	 * already started needs no warm start, and its coefficient is derived
+	 * from the sample period it was last using and the current time
+	 * constant.
+	 * 
+	 * @param state
+	 *            The snapshot to restore.
+	 */
+	public void restoreState(FilterState state)
+	{
+		System.arraycopy(state.getGravity(), 0, gravity, 0, gravity.length);
+		System.arraycopy(state.getOutput(), 0, output, 0, output.length);
+
+		samplePeriod = state.getSamplePeriod();
+		timestamp = state.getTimestamp();
+		count = state.getCount();
+
+		seeded = count > 0;
+
+		delta = 0;
+
+		if (samplePeriod > 0)
+		{
+			updateAlpha(samplePeriod);
+		}
+		else if (state.getDelta() > 0)
+		{
+			updateAlpha(state.getDelta());
+		}
+	}
+
+	public void setTimeConstant(float timeConstant)
+	{
+		this.timeConstant = timeConstant;
+
+		// Force the coefficient to be recomputed for the new time constant.
+		delta = 0;
+
+		if (samplePeriod > 0)
+		{
+			updateAlpha(samplePeriod);
+		}
+	}
+
+	/**
+	 * Set the sample rate measured from the sensor. The coefficient is then
+	 * derived from the measured rate instead of the spacing of each pair of
+	 * timestamps, so jitter in the timestamps no longer moves it around. It
+	 * is only recomputed when the rate actually changes.
+	 * 
+	 * @param frequency
+	 *            The measured sample rate in Hz, or zero to go back to the
+	 *            spacing of the timestamps.
+	 */
+	public void setSampleRate(float frequency)
+	{
+		long samplePeriod = frequency > 0 ? Math
+				.round(1000000000.0 / frequency) : 0;
+
+		if (samplePeriod != this.samplePeriod)
+		{
+			this.samplePeriod = samplePeriod;
+
+			if (samplePeriod > 0)
+			{
+				updateAlpha(samplePeriod);
+			}
+			else
+			{
+				delta = 0;
+			}
+		}
+	}
+
+	/**
+	 * Get the coefficients of the filter as a first order section of a
+	 * BiquadCascade, so it can be run by other means with the same response,
+	 * such as backwards over a recorded log.
+	 * 
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 * @param sampleRate
+	 *            The sample rate in Hz.
+	 * @return Returns the b0, b1, b2, a1 and a2 of the section.
+	 */
+	public static double[] getCoefficients(float timeConstant,
+			float sampleRate)
+	{
+		double period = 1.0 / sampleRate;
+
+		double alpha = timeConstant / (timeConstant + period);
+
+		return new double[]
+		{ 1 - alpha, 0, 0, -alpha, 0 };
+	}
+
+	/**
+	 * Start the filter again from its first sample, with a warm start if one
+	 * is set. The sample rate set with setSampleRate() is kept, so the
+	 * coefficient is right from the first sample; call setSampleRate(0) to
+	 * clear it as well and go back to the spacing of the timestamps.
+	 */
+	public void reset()
+	{
+		startTime = 0;
+		timestamp = 0;
+		delta = 0;
+		count = 0;
+		seeded = false;
+		dt = 0;
+		alpha = 0;
+
+		rateEstimator.reset();
+
+		if (samplePeriod > 0)
+		{
+			updateAlpha(samplePeriod);
+		}
+	}
+
+	/**
+	 * Compute the coefficient for a sample period.
+	 * 
+	 * @param delta
+	 *            The sample period in nanoseconds.
+	 */
+	private void updateAlpha(long delta)
+	{
+		double period = delta * NS2S;
+
+		this.delta = delta;
+
+		dt = (float) period;
+		alpha = (float) (timeConstant / (timeConstant + period));
+	}
+
+	/**
+	 * Apply the current coefficient to a sample.
+	 * 
+	 * @param acceleration
+	 *            The acceleration data.
+	 * @return Returns the output of the filter.
+	 */
+	private float[] filter(float[] acceleration)
+	{
+		// Get a local copy of the sensor values
+		System.arraycopy(acceleration, 0, this.input, 0, acceleration.length);
+
+		if (!seeded && count <= warmStart)
+		{
+			// Seed gravity with the mean of the first samples.
+			float weight = 1f / count;
+
+			gravity[0] += (input[0] - gravity[0]) * weight;
+			gravity[1] += (input[1] - gravity[1]) * weight;
+			gravity[2] += (input[2] - gravity[2]) * weight;
+
+			output[0] = input[0] - gravity[0];
+			output[1] = input[1] - gravity[1];
+			output[2] = input[2] - gravity[2];
+		}
+		else if (seeded || warmStart > 0 || count > 5)
+		{
+			gravity[0] = alpha * gravity[0] + (1 - alpha) * input[0];
+			gravity[1] = alpha * gravity[1] + (1 - alpha) * input[1];
+			gravity[2] = alpha * gravity[2] + (1 - alpha) * input[2];
+			
+			// Determine the linear acceleration
+			output[0] = input[0] - gravity[0];
+			output[1] = input[1] - gravity[1];
+			output[2] = input[2] - gravity[2];
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,407 @@
+package com.kircherelectronics.lowpasslinearacceleration.filter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.kircherelectronics.lowpasslinearacceleration.log.LogReader;
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Separates gravity from a recorded log without lag, by running the low-pass
+ * filter over the log forwards and then backwards (filtfilt). The phase
+ * shifts of the two passes cancel, so events in the linear acceleration line
+ * up with the raw acceleration. The magnitude response is that of the filter
+ * squared, so the cutoff is -6 dB rather than -3 dB and the roll off is
+ * twice as steep.
+ *
+ * The filter is the single pole filter of LowPassFilter or a Butterworth
+ * filter from ButterworthDesign, designed for the sample rate measured from
+ * the start of the log, so the offline output uses the same design as the
+ * app.
+ *
+ * The log is read as a LogReader, with the linear acceleration replaced by
+ * the zero-phase output, and is processed in chunks so memory stays bounded
+ * however long the log is. The forward pass carries its state from chunk to
+ * chunk. The backward pass of a chunk starts from the samples after it, far
+ * enough ahead that the response of the filter has decayed to a millionth
+ * by the time it reaches the chunk.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class ZeroPhaseFilter implements LogReader
+{
+	private static final String tag = ZeroPhaseFilter.class.getSimpleName();
+
+	// The samples output per chunk, not counting the overlap
+	public final static int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	// The order that selects the single pole filter of LowPassFilter
+	public final static int SINGLE_POLE = 0;
+
+	private static final int BLOCK_SIZE = 1024;
+
+	// The number of time constants of the slowest pole for its response to
+	// decay to a millionth, ln(10^6)
+	private static final double OVERLAP_DECAY = 13.8;
+
+	private final LogReader source;
+
+	private final int order;
+
+	private final float timeConstant;
+
+	private final int chunkSize;
+
+	// The samples read ahead of a chunk for its backward pass, known once
+	// the filter is designed
+	private int overlap = 0;
+
+	private BiquadCascade forward;
+	private BiquadCascade backward;
+
+	private final RateEstimator rateEstimator = new RateEstimator();
+
+	// The blocks read from the source
+	private final long[] blockTimestamps = new long[BLOCK_SIZE];
+	private final float[] blockAcceleration = new float[BLOCK_SIZE * 3];
+	private final float[] blockLpfAcceleration = new float[BLOCK_SIZE * 3];
+
+	// The chunk and its overlap
+	private long[] timestamps = new long[0];
+	private float[] acceleration = new float[0];
+
+	// The output of the forward pass
+	private float[] filtered = new float[0];
+
+	// The output of the backward pass, the zero-phase gravity
+	private float[] gravity = new float[0];
+
+	// The number of samples in the buffers
+	private int filled = 0;
+
+	// The number of samples through the forward pass
+	private int forwarded = 0;
+
+	// The samples of the chunk that are ready to be read
+	private int ready = 0;
+
+	// The next sample to be read
+	private int position = 0;
+
+	private boolean endOfLog = false;
+
+	/**
+	 * Filter a log with the default chunk size.
+	 *
+	 * @param source
+	 *            The log. It is closed with this reader.
+	 * @param order
+	 *            The order of the Butterworth filter, or SINGLE_POLE.
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 */
+	public ZeroPhaseFilter(LogReader source, int order, float timeConstant)
+	{
+		this(source, order, timeConstant, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Filter a log.
+	 *
+	 * @param source
+	 *            The log. It is closed with this reader.
+	 * @param order
+	 *            The order of the Butterworth filter, or SINGLE_POLE.
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 * @param chunkSize
+	 *            The samples to output per chunk. Memory use is proportional
+	 *            to the chunk size plus the overlap.
+	 */
+	public ZeroPhaseFilter(LogReader source, int order, float timeConstant,
+			int chunkSize)
+	{
+		if (order < 0 || order > ButterworthDesign.MAX_ORDER)
+		{
+			throw new IllegalArgumentException("Invalid order " + order);
+		}
+
+		if (chunkSize < 1)
+		{
+			throw new IllegalArgumentException("Invalid chunk size "
+					+ chunkSize);
+		}
+
+		this.source = source;
+		this.order = order;
+		this.timeConstant = timeConstant;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Get the number of samples read ahead of each chunk.
+	 *
+	 * @return Returns the overlap in samples, or zero until the first
+	 *         records are read.
+	 */
+	public int getOverlap()
+	{
+		return overlap;
+	}
+
+	@Override
+	public int read(long[] timestamps, float[] acceleration,
+			float[] lpfAcceleration) throws IOException
+	{
+		int length = 0;
+
+		while (length < timestamps.length)
+		{
+			if (position == ready && !nextChunk())
+			{
+				break;
+			}
+
+			int count = Math.min(timestamps.length - length, ready
+					- position);
+
+			System.arraycopy(this.timestamps, position, timestamps, length,
+					count);
+			System.arraycopy(this.acceleration, position * 3, acceleration,
+					length * 3, count * 3);
+
+			int offset = length * 3;
+
+			for (int i = position * 3; i < (position + count) * 3; i++)
+			{
+				lpfAcceleration[offset++] = this.acceleration[i] - gravity[i];
+			}
+
+			position += count;
+			length += count;
+		}
+
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		source.close();
+	}
+
+	/**
+	 * Filter the next chunk.
+	 *
+	 * @return Returns false at the end of the log.
+	 */
+	private boolean nextChunk() throws IOException
+	{
+		// Keep the overlap of the last chunk, which is the start of this one.
+		if (ready > 0)
+		{
+			int remaining = filled - ready;
+
+			System.arraycopy(timestamps, ready, timestamps, 0, remaining);
+			System.arraycopy(acceleration, ready * 3, acceleration, 0,
+					remaining * 3);
+			System.arraycopy(filtered, ready * 3, filtered, 0, remaining * 3);
+
+			filled = remaining;
+			forwarded -= ready;
+			ready = 0;
+			position = 0;
+		}
+
+		if (forward == null)
+		{
+			// Measure the sample rate from the start of the log.
+			fill(chunkSize);
+
+			if (filled == 0)
+			{
+				return false;
+			}
+
+			design();
+		}
+
+		fill(chunkSize + overlap);
+
+		if (filled == 0)
+		{
+			return false;
+		}
+
+		forward.filter(acceleration, forwarded * 3, filtered, forwarded * 3,
+				filled - forwarded);
+
+		forwarded = filled;
+
+		// Hold back the overlap for the backward pass of the next chunk,
+		// unless the log has ended.
+		ready = endOfLog ? filled : filled - overlap;
+
+		filterBackward();
+
+		return ready > 0;
+	}
+
+	/**
+	 * Run the backward pass over the buffered samples, starting settled on
+	 * the last of them.
+	 */
+	private void filterBackward()
+	{
+		for (int i = 0, j = (filled - 1) * 3; i < filled * 3; i += 3, j -= 3)
+		{
+			gravity[i] = filtered[j];
+			gravity[i + 1] = filtered[j + 1];
+			gravity[i + 2] = filtered[j + 2];
+		}
+
+		backward.reset(gravity);
+		backward.filter(gravity, 0, gravity, 0, filled);
+
+		reverse(gravity, filled);
+	}
+
+	/**
+	 * Read from the source until the buffers hold a number of samples or the
+	 * log ends.
+	 */
+	private void fill(int target) throws IOException
+	{
+		while (!endOfLog && filled < target)
+		{
+			int length = source.read(blockTimestamps, blockAcceleration,
+					blockLpfAcceleration);
+
+			if (length == 0)
+			{
+				endOfLog = true;
+
+				break;
+			}
+
+			ensureCapacity(filled + length);
+
+			System.arraycopy(blockTimestamps, 0, timestamps, filled, length);
+			System.arraycopy(blockAcceleration, 0, acceleration, filled * 3,
+					length * 3);
+
+			if (forward == null)
+			{
+				for (int i = 0; i < length; i++)
+				{
+					rateEstimator.addSample(blockTimestamps[i]);
+				}
+			}
+
+			filled += length;
+		}
+	}
+
+	/**
+	 * Design the filter for the measured sample rate.
+	 */
+	private void design() throws IOException
+	{
+		float rate = rateEstimator.getFrequency();
+
+		if (!(rate > 0))
+		{
+			throw new IOException("Can't measure the sample rate");
+		}
+
+		double[] coefficients;
+
+		// How fast the slowest pole decays relative to the time constant
+		double damping;
+
+		if (order == SINGLE_POLE)
+		{
+			coefficients = LowPassFilter.getCoefficients(timeConstant, rate);
+
+			damping = 1;
+		}
+		else
+		{
+			float cutoff = (float) (1 / (2 * Math.PI * timeConstant));
+
+			coefficients = ButterworthDesign.getCoefficients(
+					ButterworthDesign.LOW_PASS, order, cutoff, rate);
+
+			damping = Math.sin(Math.PI / (2 * order));
+		}
+
+		int sections = coefficients.length
+				/ BiquadCascade.COEFFICIENTS_PER_SECTION;
+
+		forward = new BiquadCascade(3, sections);
+		forward.setCoefficients(coefficients);
+
+		backward = new BiquadCascade(3, sections);
+		backward.setCoefficients(coefficients);
+
+		overlap = (int) Math.min(Integer.MAX_VALUE / 8,
+				Math.ceil(OVERLAP_DECAY * timeConstant * rate / damping));
+
+		// Start settled on the first sample rather than ringing up from zero.
+		forward.reset(Arrays.copyOf(acceleration, 3));
+	}
+
+	/**
+	 * Grow the buffers to hold a number of samples.
+	 */
+	private void ensureCapacity(int capacity)
+	{
+		if (timestamps.length >= capacity)
+		{
+			return;
+		}
+
+		capacity = Math.max(capacity, chunkSize + overlap + BLOCK_SIZE);
+
+		timestamps = Arrays.copyOf(timestamps, capacity);
+		acceleration = Arrays.copyOf(acceleration, capacity * 3);
+		filtered = Arrays.copyOf(filtered, capacity * 3);
+		gravity = Arrays.copyOf(gravity, capacity * 3);
+	}
+
+	/**
+	 * Reverse the order of the samples in an interleaved array.
+	 */
+	private static void reverse(float[] values, int length)
+	{
+		for (int i = 0, j = (length - 1) * 3; i < j; i += 3, j -= 3)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				float value = values[i + k];
+
+				values[i + k] = values[j + k];
+				values[j + k] = value;
+			}
+		}
+	}
+}
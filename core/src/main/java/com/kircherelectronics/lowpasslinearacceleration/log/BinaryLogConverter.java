@@ -0,0 +1,178 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Converts logs in the BinaryLogFormat layout to the .csv layout written by
+ * CsvLogFormat, so binary sessions can be opened in a spreadsheet or by
+ * existing scripts. Run from the command line with the binary logs as
+ * arguments; each is converted to a .csv file next to it.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class BinaryLogConverter
+{
+	private static final int BLOCK_SIZE = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Convert a binary log to a .csv log.
+	 * 
+	 * @param in
+	 *            The binary log.
+	 * @param out
+	 *            The .csv file to write.
+	 * @return Returns the number of records converted.
+	 * @throws IOException
+	 *             If either file can't be read or written.
+	 */
+	public static long convert(File in, File out) throws IOException
+	{
+		long[] timestamps = new long[BLOCK_SIZE];
+		float[] acceleration = new float[BLOCK_SIZE * 3];
+		float[] lpfAcceleration = new float[BLOCK_SIZE * 3];
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		CsvLogFormat format = new CsvLogFormat();
+
+		long count = 0;
+
+		BinaryLogReader reader = new BinaryLogReader(in);
+
+		try
+		{
+			FileOutputStream stream = new FileOutputStream(out);
+
+			try
+			{
+				FileChannel channel = stream.getChannel();
+
+				format.writeHeader(buffer);
+
+				int length;
+
+				while ((length = reader.read(timestamps, acceleration,
+						lpfAcceleration)) > 0)
+				{
+					for (int i = 0; i < length; i++)
+					{
+						if (buffer.remaining() < format.getMaxRecordLength())
+						{
+							flush(channel, buffer);
+						}
+
+						format.writeRecord(buffer, timestamps[i],
+								acceleration, lpfAcceleration, i * 3);
+					}
+
+					count += length;
+				}
+
+				flush(channel, buffer);
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return count;
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length == 0)
+		{
+			System.err.println("Usage: BinaryLogConverter <log"
+					+ BinaryLogFormat.FILE_EXTENSION + ">...");
+
+			System.exit(1);
+		}
+
+		boolean failed = false;
+
+		for (int i = 0; i < args.length; i++)
+		{
+			File in = new File(args[i]);
+
+			String name = in.getName();
+
+			if (name.endsWith(BinaryLogFormat.FILE_EXTENSION))
+			{
+				name = name.substring(0, name.length()
+						- BinaryLogFormat.FILE_EXTENSION.length());
+			}
+
+			File out = new File(in.getAbsoluteFile().getParentFile(), name
+					+ CsvLogFormat.FILE_EXTENSION);
+
+			try
+			{
+				long count = convert(in, out);
+
+				System.out.println(in + " -> " + out + " (" + count
+						+ " records)");
+			}
+			catch (IOException e)
+			{
+				System.err.println(in + ": " + e.getMessage());
+
+				failed = true;
+			}
+		}
+
+		if (failed)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Write the buffered bytes out to the file.
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	private BinaryLogConverter()
+	{
+	}
+}
@@ -0,0 +1,265 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads a log written in the BinaryLogFormat layout. Records are read in
+ * blocks into arrays owned by the caller, so a log of any length can be read
+ * with constant memory. A record cut short at the end of the file, as left
+ * behind if the app was killed while logging, is treated as the end of the
+ * log.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class BinaryLogReader implements LogReader
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private boolean endOfFile = false;
+
+	private int sensorType;
+	private int samplingPeriod;
+	private float timeConstant;
+	private boolean invertAxis;
+
+	private long timestamp = 0;
+
+	private final ByteBuffer buffer;
+
+	private final FileInputStream stream;
+	private final FileChannel channel;
+
+	/**
+	 * Open a log and read its header.
+	 * 
+	 * @param file
+	 *            The log file.
+	 * @throws IOException
+	 *             If the file can't be read or isn't a binary log.
+	 */
+	public BinaryLogReader(File file) throws IOException
+	{
+		stream = new FileInputStream(file);
+		channel = stream.getChannel();
+
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+
+		try
+		{
+			readHeader();
+		}
+		catch (IOException e)
+		{
+			stream.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the type of the sensor the log was captured from.
+	 * 
+	 * @return Returns the sensor type, as in android.hardware.Sensor.
+	 */
+	public int getSensorType()
+	{
+		return sensorType;
+	}
+
+	/**
+	 * Get the sampling period requested from the sensor.
+	 * 
+	 * @return Returns the sampling period in microseconds, or zero for as
+	 *         fast as possible.
+	 */
+	public int getSamplingPeriod()
+	{
+		return samplingPeriod;
+	}
+
+	/**
+	 * Get the time constant of the low-pass filter.
+	 * 
+	 * @return Returns the time constant in seconds.
+	 */
+	public float getTimeConstant()
+	{
+		return timeConstant;
+	}
+
+	/**
+	 * Get if the axes were inverted.
+	 * 
+	 * @return Returns true if the axes were inverted.
+	 */
+	public boolean isInvertAxis()
+	{
+		return invertAxis;
+	}
+
+	@Override
+	public int read(long[] timestamps, float[] acceleration,
+			float[] lpfAcceleration) throws IOException
+	{
+		int length = 0;
+
+		while (length < timestamps.length)
+		{
+			if (buffer.remaining() < BinaryLogFormat.MAX_RECORD_LENGTH
+					&& !fill())
+			{
+				// Only a partial record can be left.
+				if (!hasRecord())
+				{
+					break;
+				}
+			}
+
+			timestamp += getVarLong();
+
+			int offset = length * 3;
+
+			timestamps[length] = timestamp;
+
+			acceleration[offset] = buffer.getFloat();
+			acceleration[offset + 1] = buffer.getFloat();
+			acceleration[offset + 2] = buffer.getFloat();
+
+			lpfAcceleration[offset] = buffer.getFloat();
+			lpfAcceleration[offset + 1] = buffer.getFloat();
+			lpfAcceleration[offset + 2] = buffer.getFloat();
+
+			length++;
+		}
+
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		stream.close();
+	}
+
+	private void readHeader() throws IOException
+	{
+		fill();
+
+		if (buffer.remaining() < BinaryLogFormat.HEADER_LENGTH)
+		{
+			throw new IOException("Not a binary log");
+		}
+
+		for (int i = 0; i < BinaryLogFormat.MAGIC.length; i++)
+		{
+			if (buffer.get() != BinaryLogFormat.MAGIC[i])
+			{
+				throw new IOException("Not a binary log");
+			}
+		}
+
+		int version = buffer.get();
+
+		if (version != BinaryLogFormat.VERSION)
+		{
+			throw new IOException("Unsupported binary log version " + version);
+		}
+
+		sensorType = buffer.getInt();
+		samplingPeriod = buffer.getInt();
+		timeConstant = buffer.getFloat();
+		invertAxis = buffer.get() != 0;
+	}
+
+	/**
+	 * Move the unread bytes to the front of the buffer and read more of the
+	 * file after them.
+	 * 
+	 * @return Returns false if the end of the file has been reached.
+	 */
+	private boolean fill() throws IOException
+	{
+		if (endOfFile)
+		{
+			return false;
+		}
+
+		buffer.compact();
+
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer) < 0)
+			{
+				endOfFile = true;
+
+				break;
+			}
+		}
+
+		buffer.flip();
+
+		return !endOfFile;
+	}
+
+	/**
+	 * Check that a whole record is left in the buffer.
+	 */
+	private boolean hasRecord()
+	{
+		int position = buffer.position();
+		int limit = buffer.limit();
+
+		while (position < limit && (buffer.get(position) & 0x80) != 0)
+		{
+			position++;
+		}
+
+		return limit - position - 1 >= 6 * 4;
+	}
+
+	/**
+	 * Read a zigzag varint written by BinaryLogFormat.
+	 */
+	private long getVarLong() throws IOException
+	{
+		long zigzag = 0;
+
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = buffer.get();
+
+			zigzag |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+			{
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+
+		throw new IOException("Malformed binary log record");
+	}
+}
@@ -0,0 +1,43 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface that allows a triggered capture to ask its owner for a log to
+ * write a capture to. The callback is made on the thread that offers the
+ * samples, so it should hand over a writer that was created and started
+ * ahead of time rather than open a file there.
+ *
+ * @author Kaleb
+ *
+ */
+public interface CaptureCallback
+{
+	/**
+	 * The capture has been triggered.
+	 *
+	 * @param timestamp
+	 *            The time of the sample that crossed the threshold, in
+	 *            nanoseconds.
+	 * @return Returns a started log writer for the capture, which the
+	 *         capture closes once it is complete, or null to skip the
+	 *         capture.
+	 */
+	public LogWriter onCaptureTriggered(long timestamp);
+}
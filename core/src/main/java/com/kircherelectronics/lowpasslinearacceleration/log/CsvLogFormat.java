@@ -0,0 +1,248 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Serializes the acceleration log to the .csv layout. Each record holds the
+ * generation of the record, the timestamp in milliseconds since the first
+ * record, the raw acceleration and the low-pass filtered linear acceleration.
+ * An instance keeps the generation and start time of one log.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class CsvLogFormat implements LogFormat
+{
+	public final static String FILE_EXTENSION = ".csv";
+
+	public final static String SEPARATOR = ",";
+
+	public final static String GENERATION_TITLE = "Generation";
+	public final static String TIMESTAMP_TITLE = "Timestamp";
+
+	public final static String ACCEL_X_AXIS_TITLE = "AX";
+	public final static String ACCEL_Y_AXIS_TITLE = "AY";
+	public final static String ACCEL_Z_AXIS_TITLE = "AZ";
+
+	public final static String LPF_X_AXIS_TITLE = "LPFX";
+	public final static String LPF_Y_AXIS_TITLE = "LPFY";
+	public final static String LPF_Z_AXIS_TITLE = "LPFZ";
+
+	// The longest record written by writeRecord(), a generous bound on two
+	// longs and six floats with their separators
+	public final static int MAX_RECORD_LENGTH = 256;
+
+	// Decimal places written by writeRecord()
+	private final static int DECIMALS = 6;
+	private final static long DECIMAL_SCALE = 1000000;
+
+	// Values at least this large are written with Float.toString()
+	private final static float MAX_FIXED_VALUE = 1e12f;
+
+	private long generation = 0;
+	private long startTime = 0;
+
+	// Scratch space for formatting numbers
+	private final byte[] scratch = new byte[32];
+
+	/**
+	 * Get the header of the log.
+	 *
+	 * @return Returns the column titles of the log.
+	 */
+	public static String getHeader()
+	{
+		String headers = GENERATION_TITLE + SEPARATOR;
+
+		headers += TIMESTAMP_TITLE + SEPARATOR;
+
+		headers += ACCEL_X_AXIS_TITLE + SEPARATOR;
+		headers += ACCEL_Y_AXIS_TITLE + SEPARATOR;
+		headers += ACCEL_Z_AXIS_TITLE + SEPARATOR;
+
+		headers += LPF_X_AXIS_TITLE + SEPARATOR;
+		headers += LPF_Y_AXIS_TITLE + SEPARATOR;
+		headers += LPF_Z_AXIS_TITLE + SEPARATOR;
+
+		return headers;
+	}
+
+	@Override
+	public String getFileExtension()
+	{
+		return FILE_EXTENSION;
+	}
+
+	@Override
+	public int getMaxRecordLength()
+	{
+		return MAX_RECORD_LENGTH;
+	}
+
+	@Override
+	public void writeHeader(ByteBuffer buffer)
+	{
+		putAscii(buffer, getHeader());
+
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * Write a record of the log, followed by a new line, as ASCII text.
+	 * Nothing is allocated, so this can be used for every sample of a long
+	 * session. The timestamp is written in milliseconds since the first
+	 * record with up to six decimal places, so the full resolution of the
+	 * sensor timestamp is kept.
+	 */
+	@Override
+	public void writeRecord(ByteBuffer buffer, long timestamp,
+			float[] acceleration, float[] lpfAcceleration, int offset)
+	{
+		if (generation == 0)
+		{
+			startTime = timestamp;
+		}
+
+		putLong(buffer, scratch, generation++);
+		buffer.put((byte) ',');
+
+		long time = timestamp - startTime;
+
+		if (time < 0)
+		{
+			buffer.put((byte) '-');
+
+			time = -time;
+		}
+
+		putLong(buffer, scratch, time / DECIMAL_SCALE);
+		putFraction(buffer, scratch, time % DECIMAL_SCALE);
+		buffer.put((byte) ',');
+
+		putFloat(buffer, scratch, acceleration[offset]);
+		buffer.put((byte) ',');
+		putFloat(buffer, scratch, acceleration[offset + 1]);
+		buffer.put((byte) ',');
+		putFloat(buffer, scratch, acceleration[offset + 2]);
+		buffer.put((byte) ',');
+
+		putFloat(buffer, scratch, lpfAcceleration[offset]);
+		buffer.put((byte) ',');
+		putFloat(buffer, scratch, lpfAcceleration[offset + 1]);
+		buffer.put((byte) ',');
+		putFloat(buffer, scratch, lpfAcceleration[offset + 2]);
+		buffer.put((byte) ',');
+
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * Write a long as ASCII digits.
+	 */
+	private static void putLong(ByteBuffer buffer, byte[] scratch, long value)
+	{
+		if (value < 0)
+		{
+			buffer.put((byte) '-');
+
+			// Long.MIN_VALUE has no positive counterpart.
+			if (value == Long.MIN_VALUE)
+			{
+				putAscii(buffer, "9223372036854775808");
+				return;
+			}
+
+			value = -value;
+		}
+
+		int length = 0;
+
+		do
+		{
+			scratch[length++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		}
+		while (value != 0);
+
+		while (length > 0)
+		{
+			buffer.put(scratch[--length]);
+		}
+	}
+
+	/**
+	 * Write a float as ASCII with up to DECIMALS decimal places.
+	 */
+	private static void putFloat(ByteBuffer buffer, byte[] scratch,
+			float value)
+	{
+		if (Float.isNaN(value) || Float.isInfinite(value)
+				|| Math.abs(value) >= MAX_FIXED_VALUE)
+		{
+			putAscii(buffer, Float.toString(value));
+			return;
+		}
+
+		long scaled = Math.round(Math.abs((double) value) * DECIMAL_SCALE);
+
+		if (value < 0 && scaled != 0)
+		{
+			buffer.put((byte) '-');
+		}
+
+		putLong(buffer, scratch, scaled / DECIMAL_SCALE);
+		putFraction(buffer, scratch, scaled % DECIMAL_SCALE);
+	}
+
+	/**
+	 * Write the decimal point and the fraction, in millionths.
+	 */
+	private static void putFraction(ByteBuffer buffer, byte[] scratch,
+			long fraction)
+	{
+		buffer.put((byte) '.');
+
+		// Drop the trailing zeros, but keep at least one decimal place.
+		int decimals = DECIMALS;
+
+		while (decimals > 1 && fraction % 10 == 0)
+		{
+			fraction /= 10;
+			decimals--;
+		}
+
+		for (int i = decimals - 1; i >= 0; i--)
+		{
+			scratch[i] = (byte) ('0' + (fraction % 10));
+			fraction /= 10;
+		}
+
+		buffer.put(scratch, 0, decimals);
+	}
+
+	private static void putAscii(ByteBuffer buffer, String value)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			buffer.put((byte) value.charAt(i));
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads a log written in the CsvLogFormat layout, or by older versions of the
+ * app that logged whole milliseconds, put a blank line after the header and
+ * ended the last record without a line break. The timestamps are in
+ * milliseconds since the first record, so they are read back as nanoseconds
+ * since the first record.
+ *
+ * Every record ends with a separator after its last column, so a record cut
+ * short can't pass for a complete one. A malformed last record, as left
+ * behind if the app was killed while logging, is treated as the end of the
+ * log. A malformed record anywhere else is an error.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class CsvLogReader implements LogReader
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Generation, timestamp and the six axes
+	private static final int COLUMNS = 8;
+
+	private final BufferedReader reader;
+
+	private final String[] columns = new String[COLUMNS];
+
+	private int line = 0;
+
+	// The line after the one being read, or null at the end of the file
+	private String next;
+
+	/**
+	 * Open a log.
+	 *
+	 * @param file
+	 *            The log file.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public CsvLogReader(File file) throws IOException
+	{
+		reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "US-ASCII"), BUFFER_SIZE);
+
+		try
+		{
+			next = reader.readLine();
+		}
+		catch (IOException e)
+		{
+			reader.close();
+
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(long[] timestamps, float[] acceleration,
+			float[] lpfAcceleration) throws IOException
+	{
+		int length = 0;
+
+		while (length < timestamps.length && next != null)
+		{
+			String record = next;
+
+			next = reader.readLine();
+
+			line++;
+
+			// Skip the blank line of older logs and the header.
+			if (record.length() == 0 || !isNumber(record.charAt(0)))
+			{
+				continue;
+			}
+
+			if (!parse(record, timestamps, acceleration, lpfAcceleration,
+					length))
+			{
+				if (next == null)
+				{
+					break;
+				}
+
+				throw new IOException("Malformed record on line " + line);
+			}
+
+			length++;
+		}
+
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	/**
+	 * Parse a record into the arrays at an index.
+	 *
+	 * @return Returns false if the record is malformed.
+	 */
+	private boolean parse(String record, long[] timestamps,
+			float[] acceleration, float[] lpfAcceleration, int index)
+	{
+		if (!split(record))
+		{
+			return false;
+		}
+
+		int offset = index * 3;
+
+		try
+		{
+			timestamps[index] = Math.round(Double.parseDouble(columns[1])
+					* 1000000.0);
+
+			for (int i = 0; i < 3; i++)
+			{
+				acceleration[offset + i] = Float.parseFloat(columns[2 + i]);
+				lpfAcceleration[offset + i] = Float
+						.parseFloat(columns[5 + i]);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Split a record into its columns.
+	 *
+	 * @return Returns false if the record has too few columns or its last
+	 *         column isn't followed by a separator.
+	 */
+	private boolean split(String record)
+	{
+		int start = 0;
+
+		for (int i = 0; i < COLUMNS; i++)
+		{
+			int end = record.indexOf(',', start);
+
+			if (end < 0)
+			{
+				return false;
+			}
+
+			columns[i] = record.substring(start, end);
+
+			start = end + 1;
+		}
+
+		return true;
+	}
+
+	private static boolean isNumber(char c)
+	{
+		return (c >= '0' && c <= '9') || c == '-';
+	}
+}
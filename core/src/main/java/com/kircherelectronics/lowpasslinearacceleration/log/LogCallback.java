@@ -0,0 +1,44 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface that allows a log writer to callback its owner once the log
+ * has been written out and closed. The callback is made on the writer's
+ * thread.
+ * 
+ * @author Kaleb
+ * 
+ */
+public interface LogCallback
+{
+	/**
+	 * The log has been closed.
+	 * 
+	 * @param file
+	 *            The log file.
+	 * @param exception
+	 *            The error that stopped the log, or null if it was written
+	 *            successfully.
+	 */
+	public void onLogClosed(File file, IOException exception);
+}
@@ -0,0 +1,125 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Finds and opens the logs written by the app, in either layout.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public final class LogFiles
+{
+	// The start of the name of every log the app writes
+	public final static String PREFIX = "LPFLinearAcceleration-";
+
+	/**
+	 * Check if a file is a log written by the app.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return Returns true if the file is named like a .csv or binary log.
+	 */
+	public static boolean isLog(File file)
+	{
+		String name = file.getName();
+
+		return file.isFile()
+				&& name.startsWith(PREFIX)
+				&& (name.endsWith(CsvLogFormat.FILE_EXTENSION) || name
+						.endsWith(BinaryLogFormat.FILE_EXTENSION));
+	}
+
+	/**
+	 * Check if a log is in the binary layout.
+	 * 
+	 * @param file
+	 *            The log.
+	 * @return Returns true for a binary log, false for a .csv log.
+	 */
+	public static boolean isBinary(File file)
+	{
+		return file.getName().endsWith(BinaryLogFormat.FILE_EXTENSION);
+	}
+
+	/**
+	 * Create a new empty log, so its name is taken before the log is
+	 * written. A numbered suffix is added if the name is already taken.
+	 * 
+	 * @param directory
+	 *            The directory of the log.
+	 * @param name
+	 *            The name of the log without its extension.
+	 * @param extension
+	 *            The file extension of the log format.
+	 * @return Returns the file that was created.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public static File reserve(File directory, String name, String extension)
+			throws IOException
+	{
+		File file = new File(directory, name + extension);
+
+		for (int i = 1; !file.createNewFile(); i++)
+		{
+			file = new File(directory, name + "-" + i + extension);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Get the sidecar file the summary of a log is written to.
+	 * 
+	 * @param file
+	 *            The log.
+	 * @return Returns the summary file.
+	 */
+	public static File getSummaryFile(File file)
+	{
+		return new File(file.getPath() + SummaryPyramid.FILE_EXTENSION);
+	}
+
+	/**
+	 * Open a log with the reader for its layout.
+	 * 
+	 * @param file
+	 *            The log.
+	 * @return Returns the reader.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public static LogReader openReader(File file) throws IOException
+	{
+		if (isBinary(file))
+		{
+			return new BinaryLogReader(file);
+		}
+
+		return new CsvLogReader(file);
+	}
+
+	private LogFiles()
+	{
+	}
+}
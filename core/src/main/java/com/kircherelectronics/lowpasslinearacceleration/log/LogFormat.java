@@ -0,0 +1,72 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface for the layouts a log writer can serialize records to. An
+ * instance belongs to one log and is only used by the writer's thread, so it
+ * may keep state between records.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public interface LogFormat
+{
+	/**
+	 * Get the extension of files in this format.
+	 * 
+	 * @return Returns the file extension, including the dot.
+	 */
+	public String getFileExtension();
+
+	/**
+	 * Get the most bytes a single record can take.
+	 * 
+	 * @return Returns the maximum record length in bytes.
+	 */
+	public int getMaxRecordLength();
+
+	/**
+	 * Write the header of the log.
+	 * 
+	 * @param buffer
+	 *            The buffer to write to.
+	 */
+	public void writeHeader(ByteBuffer buffer);
+
+	/**
+	 * Write a record of the log. The buffer must have at least
+	 * getMaxRecordLength() bytes remaining.
+	 * 
+	 * @param buffer
+	 *            The buffer to write to.
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param acceleration
+	 *            The interleaved raw acceleration.
+	 * @param lpfAcceleration
+	 *            The interleaved low-pass filtered linear acceleration.
+	 * @param offset
+	 *            The index of the x axis of the record in both arrays.
+	 */
+	public void writeRecord(ByteBuffer buffer, long timestamp,
+			float[] acceleration, float[] lpfAcceleration, int offset);
+}
@@ -0,0 +1,58 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.IOException;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An interface for reading back the records of a log, whatever layout it was
+ * written in. Records are read in blocks into arrays owned by the caller.
+ * 
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public interface LogReader
+{
+	/**
+	 * Read the next records of the log, up to the length of the timestamps
+	 * array.
+	 * 
+	 * @param timestamps
+	 *            The array to write the timestamps in nanoseconds to.
+	 * @param acceleration
+	 *            The array to write the interleaved raw acceleration to. It
+	 *            must hold three values per timestamp.
+	 * @param lpfAcceleration
+	 *            The array to write the interleaved linear acceleration to.
+	 *            It must hold three values per timestamp.
+	 * @return Returns the number of records read, zero at the end of the log.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public int read(long[] timestamps, float[] acceleration,
+			float[] lpfAcceleration) throws IOException;
+
+	/**
+	 * Close the log.
+	 * 
+	 * @throws IOException
+	 *             If the file can't be closed.
+	 */
+	public void close() throws IOException;
+}
@@ -0,0 +1,501 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kircherelectronics.lowpasslinearacceleration.buffer.SampleRingBuffer;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Streams the acceleration log to a file on a background thread. Records are
+ * handed to the writer through a preallocated ring, serialized by a LogFormat
+ * into a reusable byte buffer and written to a FileChannel whenever the buffer fills
+ * up or the flush interval passes. Memory use is constant no matter how long
+ * the session runs, and closing the log never blocks the caller.
+ *
+ * A SummaryPyramid of the log can be built alongside it on the writer
+ * thread and written to a sidecar file, so long logs can be browsed without
+ * reading them.
+ *
+ * The file is only created once the first record arrives, so a writer can be
+ * started ahead of time, and named once it is used, without leaving an empty
+ * file behind while it waits.
+ *
+ * Only one thread may call offer().
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class LogWriter implements Runnable
+{
+	private static final String tag = LogWriter.class.getSimpleName();
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// How long buffered records may wait before they are written out. The
+	// writer sleeps this long while records arrive, so the ring has to hold
+	// the records of one interval.
+	private static final long FLUSH_INTERVAL = 500000000L;
+
+	private volatile boolean closed = false;
+
+	// Set while the writer thread sleeps until a record is offered
+	private volatile boolean waiting = false;
+
+	// Set if the log is deleted rather than kept once it is closed
+	private volatile boolean discarded = false;
+
+	private final long[] timestamps;
+	private final float[] rawAcceleration;
+	private final float[] lpfAcceleration;
+
+	private final ByteBuffer buffer;
+
+	// Set by the writer thread if the log is named once it is opened
+	private volatile File file;
+
+	// The name given to the log once it is known, or null to keep the file
+	private volatile String name;
+
+	// Used by the writer thread only
+	private final LogFormat format;
+
+	private final LogCallback callback;
+
+	// The sidecar file of the summary, or null for no summary
+	private volatile File summaryFile;
+
+	// Used by the writer thread only
+	private SummaryPyramid summary;
+
+	// Passes records from the producer to the writer thread
+	private final SampleRingBuffer records;
+
+	private Thread thread;
+
+	/**
+	 * Create a new log writer.
+	 *
+	 * @param file
+	 *            The file to write the log to.
+	 * @param format
+	 *            The layout to write the log in.
+	 * @param capacity
+	 *            The number of records that can be waiting to be written.
+	 * @param callback
+	 *            The callback for when the log is closed.
+	 */
+	public LogWriter(File file, LogFormat format, int capacity,
+			LogCallback callback)
+	{
+		this(file, format, capacity, callback, null);
+	}
+
+	/**
+	 * Create a new log writer that also writes a summary of the log.
+	 * 
+	 * @param file
+	 *            The file to write the log to.
+	 * @param format
+	 *            The layout to write the log in.
+	 * @param capacity
+	 *            The number of records that can be waiting to be written.
+	 * @param callback
+	 *            The callback for when the log is closed.
+	 * @param summaryFile
+	 *            The file to write the summary to, or null for no summary.
+	 */
+	public LogWriter(File file, LogFormat format, int capacity,
+			LogCallback callback, File summaryFile)
+	{
+		this.file = file;
+		this.format = format;
+		this.callback = callback;
+		this.summaryFile = summaryFile;
+
+		records = new SampleRingBuffer(capacity);
+
+		timestamps = new long[records.getCapacity()];
+		rawAcceleration = new float[records.getCapacity() * 3];
+		lpfAcceleration = new float[records.getCapacity() * 3];
+
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	/**
+	 * Start the writer thread.
+	 */
+	public void start()
+	{
+		thread = new Thread(this, tag);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		thread.start();
+	}
+
+	/**
+	 * Add a record to the log.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param rawAcceleration
+	 *            The raw acceleration.
+	 * @param lpfAcceleration
+	 *            The low-pass filtered linear acceleration.
+	 * @return Returns false if the writer has fallen behind and the record
+	 *         was dropped.
+	 */
+	public boolean offer(long timestamp, float[] rawAcceleration,
+			float[] lpfAcceleration)
+	{
+		boolean offered = records.offer(timestamp, rawAcceleration,
+				lpfAcceleration);
+
+		wake();
+
+		return offered;
+	}
+
+	/**
+	 * Add a record out of a block of interleaved samples to the log.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param rawAcceleration
+	 *            The interleaved raw acceleration.
+	 * @param lpfAcceleration
+	 *            The interleaved low-pass filtered linear acceleration.
+	 * @param offset
+	 *            The index of the x axis of the record in both arrays.
+	 * @return Returns false if the writer has fallen behind and the record
+	 *         was dropped.
+	 */
+	public boolean offer(long timestamp, float[] rawAcceleration,
+			float[] lpfAcceleration, int offset)
+	{
+		boolean offered = records.offer(timestamp, rawAcceleration,
+				lpfAcceleration, offset);
+
+		wake();
+
+		return offered;
+	}
+
+	/**
+	 * Get the number of records dropped because the writer fell behind.
+	 *
+	 * @return Returns the dropped record count.
+	 */
+	public int getDropped()
+	{
+		return records.getDropped();
+	}
+
+	/**
+	 * Name the log once it is known, such as a log started ahead of time and
+	 * named when it is used. Call it before the first record is offered. The
+	 * log is created in the directory of the file it was created with and
+	 * has the extension of its format, with a numbered suffix if the name is
+	 * taken. The summary is named after the log.
+	 *
+	 * @param name
+	 *            The name of the log without its extension.
+	 */
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Get the log file.
+	 *
+	 * @return Returns the log file, which changes once a named log is
+	 *         opened.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Get the summary file.
+	 * 
+	 * @return Returns the summary file, or null if there is no summary.
+	 */
+	public File getSummaryFile()
+	{
+		return summaryFile;
+	}
+
+	/**
+	 * Close the log. Every record offered before this call is written before
+	 * the file and its summary are closed, then the callback is made. Returns
+	 * immediately.
+	 */
+	public void close()
+	{
+		closed = true;
+
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Close the log and delete it and its summary, without the callback.
+	 * This is for a writer that was started ahead of time and never used,
+	 * whose file was never opened. Returns immediately.
+	 */
+	public void discard()
+	{
+		discarded = true;
+
+		close();
+	}
+
+	@Override
+	public void run()
+	{
+		IOException exception = null;
+
+		FileOutputStream stream = null;
+
+		try
+		{
+			// The file is opened with the first record, so a writer started
+			// ahead of time doesn't leave a file behind while it waits.
+			FileChannel channel = null;
+
+			long flushTime = System.nanoTime();
+
+			while (true)
+			{
+				// Read the flag before draining so nothing offered before
+				// close() is missed.
+				boolean done = closed;
+
+				int length;
+
+				while ((length = records.drain(timestamps, rawAcceleration,
+						lpfAcceleration)) > 0)
+				{
+					if (stream == null)
+					{
+						stream = open();
+						channel = stream.getChannel();
+					}
+
+					writeRecords(channel, length);
+				}
+
+				// A log without records is still written, unless it is
+				// discarded.
+				if (done && stream == null && !discarded)
+				{
+					stream = open();
+					channel = stream.getChannel();
+				}
+
+				long time = System.nanoTime();
+
+				if (stream != null
+						&& (done || time - flushTime >= FLUSH_INTERVAL))
+				{
+					flush(channel);
+
+					flushTime = time;
+				}
+
+				if (done)
+				{
+					break;
+				}
+
+				if (buffer.position() > 0)
+				{
+					// Let records gather until the buffer is due to be
+					// written out.
+					LockSupport.parkNanos(this, flushTime + FLUSH_INTERVAL
+							- time);
+				}
+				else
+				{
+					// Nothing to write, so sleep until a record is offered
+					// or the log is closed. A wake up the producer misses
+					// is made by its next offer, which still sees the flag.
+					waiting = true;
+
+					if (records.isEmpty() && !closed)
+					{
+						LockSupport.park(this);
+					}
+
+					waiting = false;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			exception = e;
+		}
+		finally
+		{
+			if (summary != null)
+			{
+				try
+				{
+					summary.close();
+				}
+				catch (IOException e)
+				{
+					if (exception == null)
+					{
+						exception = e;
+					}
+				}
+			}
+
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					if (exception == null)
+					{
+						exception = e;
+					}
+				}
+			}
+
+			if (discarded)
+			{
+				if (stream != null)
+				{
+					file.delete();
+
+					if (summaryFile != null)
+					{
+						summaryFile.delete();
+					}
+				}
+			}
+			else if (callback != null)
+			{
+				callback.onLogClosed(file, exception);
+			}
+		}
+	}
+
+	/**
+	 * Wake the writer thread if it sleeps with nothing to write, so the
+	 * thread only wakes when the ring goes from empty to holding records.
+	 */
+	private void wake()
+	{
+		if (waiting)
+		{
+			waiting = false;
+
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Create the log and its summary and write the header into the buffer.
+	 */
+	private FileOutputStream open() throws IOException
+	{
+		String name = this.name;
+
+		if (name != null)
+		{
+			file = LogFiles.reserve(file.getParentFile(), name,
+					format.getFileExtension());
+
+			if (summaryFile != null)
+			{
+				summaryFile = LogFiles.getSummaryFile(file);
+			}
+		}
+
+		FileOutputStream stream = new FileOutputStream(file);
+
+		try
+		{
+			if (summaryFile != null)
+			{
+				summary = new SummaryPyramid(summaryFile);
+			}
+
+			format.writeHeader(buffer);
+		}
+		catch (IOException e)
+		{
+			stream.close();
+
+			throw e;
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Serialize drained records into the buffer, writing it out as it fills.
+	 */
+	private void writeRecords(FileChannel channel, int length)
+			throws IOException
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (buffer.remaining() < format.getMaxRecordLength())
+			{
+				flush(channel);
+			}
+
+			format.writeRecord(buffer, timestamps[i], rawAcceleration,
+					lpfAcceleration, i * 3);
+
+			if (summary != null)
+			{
+				summary.addSample(timestamps[i], rawAcceleration,
+						lpfAcceleration, i * 3);
+			}
+		}
+	}
+
+	/**
+	 * Write the buffered bytes out to the file.
+	 */
+	private void flush(FileChannel channel) throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+}
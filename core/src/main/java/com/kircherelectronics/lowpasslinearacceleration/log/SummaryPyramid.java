@@ -0,0 +1,572 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Builds a summary of a log as it is written, so a long recording can be
+ * viewed or analysed without reading the log itself. Time is cut into
+ * buckets at several resolutions, 1, 10 and 60 seconds by default, and each
+ * bucket records the minimum, maximum, mean and RMS of every axis of the raw
+ * and the low-pass filtered acceleration.
+ *
+ * Each sample only updates the finest bucket. When it is complete, the
+ * bucket is written out and merged into the coarser buckets, so the work per
+ * sample is constant and the memory is fixed however long the log runs.
+ *
+ * The summary is written to a sidecar file next to the log:
+ *
+ * <pre>
+ * magic             4 bytes  "LPFS"
+ * version           1 byte
+ * levels            1 byte
+ * for each level:
+ *   period          long, in nanoseconds
+ *   offset          long, of its first bucket in the file
+ *   buckets         int
+ * </pre>
+ *
+ * followed by the buckets of each level, finest first. A bucket is its start
+ * time in nanoseconds as a long and its sample count as an int, followed by
+ * the minimum, maximum, mean and RMS as floats for the raw xyz and then the
+ * low-pass filtered xyz acceleration. All values are big-endian. Buckets
+ * without samples are left out. The coarser levels are spilled to temporary
+ * files while the log runs and appended when the summary is closed, so the
+ * file is only complete once close() returns. Use SummaryReader to read it.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class SummaryPyramid
+{
+	public final static String FILE_EXTENSION = ".summary";
+
+	public final static byte[] MAGIC =
+	{ 'L', 'P', 'F', 'S' };
+
+	public final static int VERSION = 1;
+
+	// The raw and the low-pass filtered xyz acceleration
+	public final static int CHANNELS = 6;
+
+	// The statistics of a channel, in the order they are written
+	public final static int MIN = 0;
+	public final static int MAX = 1;
+	public final static int MEAN = 2;
+	public final static int RMS = 3;
+	public final static int STATISTICS = 4;
+
+	// start, sample count and the statistics of each channel
+	public final static int RECORD_LENGTH = 8 + 4 + CHANNELS * STATISTICS * 4;
+
+	// magic, version, levels
+	public final static int HEADER_LENGTH = 4 + 1 + 1;
+
+	// period, offset, buckets
+	public final static int LEVEL_HEADER_LENGTH = 8 + 8 + 4;
+
+	public final static int MAX_LEVELS = 16;
+
+	public final static long[] DEFAULT_PERIODS =
+	{ 1000000000L, 10000000000L, 60000000000L };
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final File file;
+
+	private final int levels;
+
+	private final long[] periods;
+
+	// How many of the finest buckets fit in a bucket of each level
+	private final long[] factors;
+
+	// The bucket being built at each level, counted from the first sample
+	private final long[] indices;
+	private final int[] counts;
+
+	// The running statistics of each channel at each level
+	private final float[] minimums;
+	private final float[] maximums;
+	private final double[] sums;
+	private final double[] sumSquares;
+
+	// The buckets written out at each level
+	private final int[] written;
+
+	private final ByteBuffer[] buffers;
+
+	// The summary file takes the finest level, the others are spilled to
+	// parts until the summary is closed.
+	private final File[] parts;
+	private final RandomAccessFile[] files;
+	private final FileChannel[] channels;
+
+	private boolean started = false;
+	private boolean closed = false;
+
+	// The time of the first sample, where the buckets start
+	private long origin = 0;
+
+	// The end of the finest bucket being built
+	private long bucketEnd = 0;
+
+	/**
+	 * Create a summary with the default resolutions.
+	 *
+	 * @param file
+	 *            The file to write the summary to.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public SummaryPyramid(File file) throws IOException
+	{
+		this(file, DEFAULT_PERIODS);
+	}
+
+	/**
+	 * Create a summary.
+	 *
+	 * @param file
+	 *            The file to write the summary to.
+	 * @param periods
+	 *            The length of the buckets of each level in nanoseconds,
+	 *            finest first. Each must be a multiple of the one before.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public SummaryPyramid(File file, long[] periods) throws IOException
+	{
+		if (periods.length < 1 || periods.length > MAX_LEVELS
+				|| periods[0] <= 0)
+		{
+			throw new IllegalArgumentException("Invalid summary periods");
+		}
+
+		for (int level = 1; level < periods.length; level++)
+		{
+			if (periods[level] <= periods[level - 1]
+					|| periods[level] % periods[level - 1] != 0)
+			{
+				throw new IllegalArgumentException("Invalid summary period "
+						+ periods[level]);
+			}
+		}
+
+		this.file = file;
+		this.levels = periods.length;
+		this.periods = periods.clone();
+
+		factors = new long[levels];
+		indices = new long[levels];
+		counts = new int[levels];
+		written = new int[levels];
+
+		minimums = new float[levels * CHANNELS];
+		maximums = new float[levels * CHANNELS];
+		sums = new double[levels * CHANNELS];
+		sumSquares = new double[levels * CHANNELS];
+
+		buffers = new ByteBuffer[levels];
+		parts = new File[levels];
+		files = new RandomAccessFile[levels];
+		channels = new FileChannel[levels];
+
+		for (int level = 0; level < levels; level++)
+		{
+			factors[level] = periods[level] / periods[0];
+
+			buffers[level] = ByteBuffer.allocate(BUFFER_SIZE);
+
+			parts[level] = level == 0 ? file : new File(file.getPath() + "."
+					+ level + ".tmp");
+
+			reset(level);
+		}
+
+		try
+		{
+			for (int level = 0; level < levels; level++)
+			{
+				files[level] = new RandomAccessFile(parts[level], "rw");
+				files[level].setLength(0);
+
+				channels[level] = files[level].getChannel();
+			}
+
+			// Leave room for the header, which is written once the levels
+			// are known.
+			channels[0].position(HEADER_LENGTH + levels
+					* LEVEL_HEADER_LENGTH);
+		}
+		catch (IOException e)
+		{
+			closeFiles();
+			deleteParts();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the summary file.
+	 *
+	 * @return Returns the summary file.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Add a sample out of a block of interleaved samples. Samples are
+	 * expected in time order; one older than the bucket being built is
+	 * counted in that bucket.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param acceleration
+	 *            The interleaved raw acceleration.
+	 * @param lpfAcceleration
+	 *            The interleaved low-pass filtered linear acceleration.
+	 * @param offset
+	 *            The index of the x axis of the sample in both arrays.
+	 * @throws IOException
+	 *             If a completed bucket can't be written.
+	 */
+	public void addSample(long timestamp, float[] acceleration,
+			float[] lpfAcceleration, int offset) throws IOException
+	{
+		if (!started)
+		{
+			origin = timestamp;
+			bucketEnd = timestamp;
+
+			started = true;
+		}
+
+		if (timestamp >= bucketEnd)
+		{
+			if (counts[0] > 0)
+			{
+				closeBucket();
+			}
+
+			indices[0] = (timestamp - origin) / periods[0];
+
+			bucketEnd = origin + (indices[0] + 1) * periods[0];
+		}
+
+		accumulate(acceleration, offset, 0);
+		accumulate(lpfAcceleration, offset, 3);
+
+		counts[0]++;
+	}
+
+	/**
+	 * Complete the summary file and close it. The files the coarser levels
+	 * were spilled to are deleted.
+	 *
+	 * @throws IOException
+	 *             If the summary can't be written.
+	 */
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+
+		closed = true;
+
+		IOException exception = null;
+
+		try
+		{
+			finish();
+		}
+		catch (IOException e)
+		{
+			exception = e;
+		}
+
+		IOException closeException = closeFiles();
+
+		deleteParts();
+
+		if (exception == null)
+		{
+			exception = closeException;
+		}
+
+		if (exception != null)
+		{
+			throw exception;
+		}
+	}
+
+	/**
+	 * Write out the buckets being built, append the coarser levels to the
+	 * summary file and write the header.
+	 */
+	private void finish() throws IOException
+	{
+		if (counts[0] > 0)
+		{
+			closeBucket();
+		}
+
+		for (int level = 1; level < levels; level++)
+		{
+			if (counts[level] > 0)
+			{
+				write(level);
+			}
+		}
+
+		for (int level = 0; level < levels; level++)
+		{
+			flush(level);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + levels
+				* LEVEL_HEADER_LENGTH);
+
+		header.put(MAGIC);
+		header.put((byte) VERSION);
+		header.put((byte) levels);
+
+		long offset = header.capacity();
+
+		for (int level = 0; level < levels; level++)
+		{
+			header.putLong(periods[level]);
+			header.putLong(offset);
+			header.putInt(written[level]);
+
+			offset += (long) written[level] * RECORD_LENGTH;
+
+			if (level > 0)
+			{
+				append(channels[level]);
+			}
+		}
+
+		header.flip();
+
+		long position = 0;
+
+		while (header.hasRemaining())
+		{
+			position += channels[0].write(header, position);
+		}
+	}
+
+	/**
+	 * Write out the finest bucket and merge it into the coarser levels,
+	 * writing out any of their buckets it completes.
+	 */
+	private void closeBucket() throws IOException
+	{
+		write(0);
+
+		for (int level = 1; level < levels; level++)
+		{
+			long index = indices[0] / factors[level];
+
+			if (counts[level] > 0 && indices[level] != index)
+			{
+				write(level);
+				reset(level);
+			}
+
+			indices[level] = index;
+
+			merge(level);
+		}
+
+		reset(0);
+	}
+
+	/**
+	 * Add an xyz sample to the finest bucket.
+	 */
+	private void accumulate(float[] values, int offset, int channel)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			float value = values[offset + i];
+
+			int c = channel + i;
+
+			if (value < minimums[c])
+			{
+				minimums[c] = value;
+			}
+
+			if (value > maximums[c])
+			{
+				maximums[c] = value;
+			}
+
+			sums[c] += value;
+			sumSquares[c] += value * value;
+		}
+	}
+
+	/**
+	 * Add the finest bucket to the bucket of a coarser level.
+	 */
+	private void merge(int level)
+	{
+		for (int i = 0, c = level * CHANNELS; i < CHANNELS; i++, c++)
+		{
+			minimums[c] = Math.min(minimums[c], minimums[i]);
+			maximums[c] = Math.max(maximums[c], maximums[i]);
+
+			sums[c] += sums[i];
+			sumSquares[c] += sumSquares[i];
+		}
+
+		counts[level] += counts[0];
+	}
+
+	/**
+	 * Empty the bucket of a level.
+	 */
+	private void reset(int level)
+	{
+		for (int i = 0, c = level * CHANNELS; i < CHANNELS; i++, c++)
+		{
+			minimums[c] = Float.POSITIVE_INFINITY;
+			maximums[c] = Float.NEGATIVE_INFINITY;
+
+			sums[c] = 0;
+			sumSquares[c] = 0;
+		}
+
+		counts[level] = 0;
+	}
+
+	/**
+	 * Serialize the bucket of a level, writing the buffer out as it fills.
+	 */
+	private void write(int level) throws IOException
+	{
+		ByteBuffer buffer = buffers[level];
+
+		if (buffer.remaining() < RECORD_LENGTH)
+		{
+			flush(level);
+		}
+
+		int count = counts[level];
+
+		buffer.putLong(origin + indices[level] * periods[level]);
+		buffer.putInt(count);
+
+		for (int i = 0, c = level * CHANNELS; i < CHANNELS; i++, c++)
+		{
+			buffer.putFloat(minimums[c]);
+			buffer.putFloat(maximums[c]);
+			buffer.putFloat((float) (sums[c] / count));
+			buffer.putFloat((float) Math.sqrt(sumSquares[c] / count));
+		}
+
+		written[level]++;
+	}
+
+	/**
+	 * Write the buffered buckets of a level out to its file.
+	 */
+	private void flush(int level) throws IOException
+	{
+		ByteBuffer buffer = buffers[level];
+
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channels[level].write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	/**
+	 * Copy a spilled level onto the end of the summary file.
+	 */
+	private void append(FileChannel part) throws IOException
+	{
+		long size = part.size();
+		long position = 0;
+
+		while (position < size)
+		{
+			position += part.transferTo(position, size - position,
+					channels[0]);
+		}
+	}
+
+	/**
+	 * Close every file, carrying on past errors so they all get closed.
+	 *
+	 * @return Returns the first error, or null.
+	 */
+	private IOException closeFiles()
+	{
+		IOException exception = null;
+
+		for (int level = 0; level < levels; level++)
+		{
+			if (files[level] != null)
+			{
+				try
+				{
+					files[level].close();
+				}
+				catch (IOException e)
+				{
+					if (exception == null)
+					{
+						exception = e;
+					}
+				}
+			}
+		}
+
+		return exception;
+	}
+
+	/**
+	 * Delete the files the coarser levels were spilled to.
+	 */
+	private void deleteParts()
+	{
+		for (int level = 1; level < levels; level++)
+		{
+			parts[level].delete();
+		}
+	}
+}
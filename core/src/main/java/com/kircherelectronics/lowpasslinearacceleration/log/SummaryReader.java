@@ -0,0 +1,273 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads a summary written by SummaryPyramid. Each level can be read on its
+ * own and from any bucket, so a viewer only reads the buckets at the
+ * resolution it shows.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class SummaryReader
+{
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	private int levels;
+
+	private long[] periods;
+	private long[] offsets;
+	private int[] buckets;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+	/**
+	 * Open a summary and read its header.
+	 *
+	 * @param file
+	 *            The summary file.
+	 * @throws IOException
+	 *             If the file can't be read or isn't a complete summary.
+	 */
+	public SummaryReader(File file) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "r");
+
+		channel = this.file.getChannel();
+
+		try
+		{
+			readHeader();
+		}
+		catch (IOException e)
+		{
+			this.file.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the number of levels in the summary.
+	 *
+	 * @return Returns the level count, finest first.
+	 */
+	public int getLevels()
+	{
+		return levels;
+	}
+
+	/**
+	 * Get the length of the buckets of a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return Returns the bucket length in nanoseconds.
+	 */
+	public long getPeriod(int level)
+	{
+		return periods[level];
+	}
+
+	/**
+	 * Get the number of buckets in a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return Returns the bucket count.
+	 */
+	public int getBuckets(int level)
+	{
+		return buckets[level];
+	}
+
+	/**
+	 * Find the finest level with no more than a number of buckets, such as
+	 * the points across a plot.
+	 *
+	 * @param maxBuckets
+	 *            The most buckets wanted.
+	 * @return Returns the level, or the coarsest level if none are small
+	 *         enough.
+	 */
+	public int findLevel(int maxBuckets)
+	{
+		for (int level = 0; level < levels; level++)
+		{
+			if (buckets[level] <= maxBuckets)
+			{
+				return level;
+			}
+		}
+
+		return levels - 1;
+	}
+
+	/**
+	 * Read a run of buckets of a level into arrays owned by the caller.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param first
+	 *            The first bucket to read.
+	 * @param starts
+	 *            The start time of each bucket in nanoseconds.
+	 * @param counts
+	 *            The number of samples in each bucket.
+	 * @param statistics
+	 *            The statistics of each bucket, SummaryPyramid.CHANNELS
+	 *            times SummaryPyramid.STATISTICS floats per bucket, indexed
+	 *            by channel and then by SummaryPyramid.MIN, MAX, MEAN or RMS.
+	 * @return Returns the number of buckets read, zero past the end of the
+	 *         level.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public int read(int level, int first, long[] starts, int[] counts,
+			float[] statistics) throws IOException
+	{
+		int length = Math.max(0, Math.min(starts.length, buckets[level]
+				- first));
+
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		int size = length * SummaryPyramid.RECORD_LENGTH;
+
+		if (buffer.capacity() < size)
+		{
+			buffer = ByteBuffer.allocate(size);
+		}
+
+		buffer.clear();
+		buffer.limit(size);
+
+		readFully(offsets[level] + (long) first
+				* SummaryPyramid.RECORD_LENGTH);
+
+		int statistic = 0;
+
+		for (int i = 0; i < length; i++)
+		{
+			starts[i] = buffer.getLong();
+			counts[i] = buffer.getInt();
+
+			for (int j = 0; j < SummaryPyramid.CHANNELS
+					* SummaryPyramid.STATISTICS; j++)
+			{
+				statistics[statistic++] = buffer.getFloat();
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Close the summary.
+	 *
+	 * @throws IOException
+	 *             If the file can't be closed.
+	 */
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	private void readHeader() throws IOException
+	{
+		buffer = ByteBuffer.allocate(SummaryPyramid.HEADER_LENGTH);
+
+		readFully(0);
+
+		for (int i = 0; i < SummaryPyramid.MAGIC.length; i++)
+		{
+			if (buffer.get() != SummaryPyramid.MAGIC[i])
+			{
+				throw new IOException("Not a complete summary");
+			}
+		}
+
+		int version = buffer.get();
+
+		if (version != SummaryPyramid.VERSION)
+		{
+			throw new IOException("Unsupported summary version " + version);
+		}
+
+		levels = buffer.get();
+
+		if (levels < 1 || levels > SummaryPyramid.MAX_LEVELS)
+		{
+			throw new IOException("Malformed summary");
+		}
+
+		periods = new long[levels];
+		offsets = new long[levels];
+		buckets = new int[levels];
+
+		buffer = ByteBuffer.allocate(levels
+				* SummaryPyramid.LEVEL_HEADER_LENGTH);
+
+		readFully(SummaryPyramid.HEADER_LENGTH);
+
+		for (int level = 0; level < levels; level++)
+		{
+			periods[level] = buffer.getLong();
+			offsets[level] = buffer.getLong();
+			buckets[level] = buffer.getInt();
+
+			if (offsets[level] + (long) buckets[level]
+					* SummaryPyramid.RECORD_LENGTH > channel.size())
+			{
+				throw new IOException("Truncated summary");
+			}
+		}
+	}
+
+	/**
+	 * Fill the buffer up to its limit from a position in the file, and flip
+	 * it for reading.
+	 */
+	private void readFully(long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+
+			if (read < 0)
+			{
+				throw new IOException("Truncated summary");
+			}
+
+			position += read;
+		}
+
+		buffer.flip();
+	}
+}
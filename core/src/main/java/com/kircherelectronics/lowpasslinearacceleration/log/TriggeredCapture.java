@@ -0,0 +1,262 @@
+package com.kircherelectronics.lowpasslinearacceleration.log;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Captures events like an oscilloscope in normal trigger mode. The most
+ * recent samples are kept in a preallocated ring, and nothing is written
+ * while the device waits. When the magnitude of the linear acceleration
+ * crosses the threshold, a log is requested from the CaptureCallback, the
+ * pre-trigger window is replayed into it from the ring and the samples that
+ * follow are written until the post-trigger time has passed. The log is then
+ * closed and the capture is armed again.
+ *
+ * The trigger fires on the rising edge, so the magnitude has to fall below
+ * the threshold before it can fire again, and crossings during a capture are
+ * part of that capture.
+ *
+ * Waiting for a trigger never allocates, and the callback is expected to
+ * hand over a log prepared ahead of time, so a trigger doesn't allocate or
+ * touch the file system either. Only one thread may call offer().
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class TriggeredCapture
+{
+	private static final String tag = TriggeredCapture.class.getSimpleName();
+
+	private final int capacity;
+	private final int mask;
+
+	private final long[] timestamps;
+	private final float[] rawAcceleration;
+	private final float[] lpfAcceleration;
+
+	// The number of samples offered
+	private long head = 0;
+
+	// How far the capture reaches before and after the trigger, in
+	// nanoseconds
+	private final long preTriggerTime;
+	private final long postTriggerTime;
+
+	private final float thresholdSquared;
+
+	private final CaptureCallback callback;
+
+	// The log of the capture in progress, or null while armed
+	private LogWriter writer;
+
+	// The time the capture in progress ends
+	private long endTime = 0;
+
+	// Whether the last sample was above the threshold
+	private boolean above = false;
+
+	private int captures = 0;
+
+	/**
+	 * Create a new triggered capture.
+	 *
+	 * @param capacity
+	 *            The number of samples the ring can hold, which should cover
+	 *            the pre-trigger time at the fastest sample rate. It is
+	 *            rounded up to a power of two.
+	 * @param preTriggerTime
+	 *            How long before the trigger is captured, in nanoseconds.
+	 * @param postTriggerTime
+	 *            How long after the trigger is captured, in nanoseconds.
+	 * @param threshold
+	 *            The magnitude of the linear acceleration that triggers a
+	 *            capture.
+	 * @param callback
+	 *            The callback that creates the log of each capture.
+	 */
+	public TriggeredCapture(int capacity, long preTriggerTime,
+			long postTriggerTime, float threshold, CaptureCallback callback)
+	{
+		if (!(threshold > 0))
+		{
+			throw new IllegalArgumentException("Invalid threshold "
+					+ threshold);
+		}
+
+		int size = 1;
+
+		while (size < capacity)
+		{
+			size <<= 1;
+		}
+
+		this.capacity = size;
+		this.mask = size - 1;
+
+		timestamps = new long[size];
+		rawAcceleration = new float[size * 3];
+		lpfAcceleration = new float[size * 3];
+
+		this.preTriggerTime = Math.max(0, preTriggerTime);
+		this.postTriggerTime = Math.max(0, postTriggerTime);
+		this.thresholdSquared = threshold * threshold;
+		this.callback = callback;
+	}
+
+	/**
+	 * Add a sample out of a block of interleaved samples.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 * @param rawAcceleration
+	 *            The interleaved raw acceleration.
+	 * @param lpfAcceleration
+	 *            The interleaved low-pass filtered linear acceleration.
+	 * @param offset
+	 *            The index of the x axis of the sample in both arrays.
+	 */
+	public void offer(long timestamp, float[] rawAcceleration,
+			float[] lpfAcceleration, int offset)
+	{
+		int index = (int) (head & mask);
+
+		timestamps[index] = timestamp;
+
+		System.arraycopy(rawAcceleration, offset, this.rawAcceleration,
+				index * 3, 3);
+		System.arraycopy(lpfAcceleration, offset, this.lpfAcceleration,
+				index * 3, 3);
+
+		head++;
+
+		if (writer != null)
+		{
+			writer.offer(timestamp, rawAcceleration, lpfAcceleration, offset);
+
+			if (timestamp >= endTime)
+			{
+				finish();
+			}
+
+			// Crossings during the capture don't trigger another one.
+			above = true;
+
+			return;
+		}
+
+		float x = lpfAcceleration[offset];
+		float y = lpfAcceleration[offset + 1];
+		float z = lpfAcceleration[offset + 2];
+
+		boolean crossed = x * x + y * y + z * z >= thresholdSquared;
+
+		if (crossed && !above)
+		{
+			trigger(timestamp);
+		}
+
+		above = crossed;
+	}
+
+	/**
+	 * Find out if a capture is being written.
+	 *
+	 * @return Returns true between a trigger and the end of its capture.
+	 */
+	public boolean isCapturing()
+	{
+		return writer != null;
+	}
+
+	/**
+	 * Get the number of captures triggered.
+	 *
+	 * @return Returns the capture count.
+	 */
+	public int getCaptures()
+	{
+		return captures;
+	}
+
+	/**
+	 * Get the number of samples the ring can hold.
+	 *
+	 * @return Returns the capacity of the ring.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Stop capturing. A capture in progress is cut short and its log is
+	 * closed.
+	 */
+	public void close()
+	{
+		if (writer != null)
+		{
+			finish();
+		}
+	}
+
+	/**
+	 * Start a capture with the samples of the ring that fall in the
+	 * pre-trigger window, ending with the sample that fired the trigger.
+	 */
+	private void trigger(long timestamp)
+	{
+		writer = callback.onCaptureTriggered(timestamp);
+
+		if (writer == null)
+		{
+			return;
+		}
+
+		captures++;
+
+		endTime = timestamp + postTriggerTime;
+
+		long startTime = timestamp - preTriggerTime;
+
+		for (long n = Math.max(0, head - capacity); n < head; n++)
+		{
+			int index = (int) (n & mask);
+
+			if (timestamps[index] >= startTime)
+			{
+				writer.offer(timestamps[index], rawAcceleration,
+						lpfAcceleration, index * 3);
+			}
+		}
+
+		if (timestamp >= endTime)
+		{
+			finish();
+		}
+	}
+
+	/**
+	 * Close the log of the capture and arm the trigger again.
+	 */
+	private void finish()
+	{
+		writer.close();
+		writer = null;
+	}
+}
@@ -0,0 +1,152 @@
+package com.kircherelectronics.lowpasslinearacceleration.plot;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the most recent values of a plot series in a primitive ring. Once the
+ * history holds the window size the oldest value is overwritten, so adding a
+ * value never allocates or boxes no matter how large the window is.
+ *
+ * Not thread safe; a series that is drawn on another thread must guard the
+ * history itself.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class PlotHistory
+{
+	private float[] values;
+
+	// The index the next value is written to
+	private int head = 0;
+
+	// The number of values held
+	private int size = 0;
+
+	/**
+	 * Create a new history.
+	 *
+	 * @param windowSize
+	 *            The number of values to keep.
+	 */
+	public PlotHistory(int windowSize)
+	{
+		values = new float[Math.max(windowSize, 1)];
+	}
+
+	/**
+	 * Add a value to the history, dropping the oldest value if the history
+	 * is full.
+	 *
+	 * @param value
+	 *            The value.
+	 */
+	public void add(float value)
+	{
+		values[head] = value;
+
+		if (++head == values.length)
+		{
+			head = 0;
+		}
+
+		if (size < values.length)
+		{
+			size++;
+		}
+	}
+
+	/**
+	 * Remove all of the values from the history.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Get a value of the history.
+	 *
+	 * @param index
+	 *            The index of the value, zero being the oldest.
+	 * @return Returns the value.
+	 */
+	public float get(int index)
+	{
+		int i = head - size + index;
+
+		if (i < 0)
+		{
+			i += values.length;
+		}
+
+		return values[i];
+	}
+
+	/**
+	 * Get the number of values in the history.
+	 *
+	 * @return Returns the number of values.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the number of values the history keeps.
+	 *
+	 * @return Returns the window size.
+	 */
+	public int getWindowSize()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Set the number of values to keep. The most recent values that fit in
+	 * the new window are kept.
+	 *
+	 * @param windowSize
+	 *            The window size.
+	 */
+	public void setWindowSize(int windowSize)
+	{
+		windowSize = Math.max(windowSize, 1);
+
+		if (windowSize == values.length)
+		{
+			return;
+		}
+
+		float[] resized = new float[windowSize];
+
+		int length = Math.min(size, windowSize);
+
+		for (int i = 0; i < length; i++)
+		{
+			resized[i] = get(size - length + i);
+		}
+
+		values = resized;
+		size = length;
+		head = length == windowSize ? 0 : length;
+	}
+}
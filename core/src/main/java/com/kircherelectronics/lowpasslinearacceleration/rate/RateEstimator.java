@@ -0,0 +1,368 @@
+package com.kircherelectronics.lowpasslinearacceleration.rate;
+
+/*
+ * Low Pass Linear Acceleration
+ * Copyright (C) 2013-2014, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Estimates the delivery rate of a sensor from the timestamps of its samples.
+ * Note that the sensor delivery rates can individually vary by a relatively
+ * large time frame, so the rate is averaged over a sliding window of the most
+ * recent sample periods. The spread of the periods in the window is kept as
+ * well, both as a standard deviation and as a histogram for percentiles, and
+ * gaps and repeated timestamps are counted as dropped and duplicate samples.
+ *
+ * Adding a sample takes constant time and never allocates. The estimator is
+ * not thread safe, so it should be fed and read on one thread.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class RateEstimator
+{
+	// Nanoseconds per second for the timestamps
+	private static final double NS2S = 1.0 / 1000000000.0;
+
+	// The number of sample periods averaged by default
+	public final static int DEFAULT_WINDOW_SIZE = 256;
+
+	// Sub-buckets per power of two in the histogram, so each bucket is
+	// within about 3% of the periods it holds
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// Enough buckets for any period up to Integer.MAX_VALUE microseconds
+	private static final int BUCKETS = (31 - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKETS;
+
+	// Periods are squared in microseconds and clamped to 10 s so the sum of
+	// squares cannot overflow.
+	private static final long MAX_SQUARED_PERIOD = 10000000;
+
+	// The number of periods needed before gaps are counted as drops
+	private static final int MIN_DROP_PERIODS = 8;
+
+	// The sample periods in the window in nanoseconds, oldest first from the
+	// head
+	private final long[] periods;
+	private final int mask;
+
+	// The number of periods in each bucket of the histogram
+	private final int[] histogram = new int[BUCKETS];
+
+	private int head = 0;
+	private int size = 0;
+
+	// Running sums of the periods in the window, in nanoseconds and in
+	// whole microseconds for the variance
+	private long sum = 0;
+	private long sumMicros = 0;
+	private long sumSquares = 0;
+
+	private long timestamp = 0;
+
+	private int count = 0;
+	private int dropped = 0;
+	private int duplicates = 0;
+
+	/**
+	 * Create a new rate estimator with the default window.
+	 */
+	public RateEstimator()
+	{
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Create a new rate estimator.
+	 *
+	 * @param windowSize
+	 *            The number of sample periods to average. It is rounded up to
+	 *            a power of two.
+	 */
+	public RateEstimator(int windowSize)
+	{
+		int size = 1;
+
+		while (size < windowSize)
+		{
+			size <<= 1;
+		}
+
+		periods = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Add the timestamp of a sample.
+	 *
+	 * @param timestamp
+	 *            The time of the sample in nanoseconds.
+	 */
+	public void addSample(long timestamp)
+	{
+		if (count++ == 0)
+		{
+			this.timestamp = timestamp;
+
+			return;
+		}
+
+		long period = timestamp - this.timestamp;
+
+		// A repeated or out of order timestamp says nothing about the rate.
+		if (period <= 0)
+		{
+			duplicates++;
+
+			return;
+		}
+
+		// A gap of one and a half periods or more means samples were lost.
+		if (size >= MIN_DROP_PERIODS)
+		{
+			long mean = sum / size;
+
+			if (period * 2 >= mean * 3)
+			{
+				dropped += (int) ((period + mean / 2) / mean) - 1;
+			}
+		}
+
+		if (size == periods.length)
+		{
+			remove(periods[head]);
+		}
+		else
+		{
+			size++;
+		}
+
+		periods[head] = period;
+		head = (head + 1) & mask;
+
+		long micros = Math.min(period / 1000, MAX_SQUARED_PERIOD);
+
+		sum += period;
+		sumMicros += micros;
+		sumSquares += micros * micros;
+		histogram[bucket(period)]++;
+
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Get the average sample period over the window.
+	 *
+	 * @return Returns the sample period in seconds or 0 if it is not known yet.
+	 */
+	public float getPeriod()
+	{
+		if (size == 0)
+		{
+			return 0;
+		}
+
+		return (float) ((double) sum / size * NS2S);
+	}
+
+	/**
+	 * Get the average sample frequency over the window.
+	 *
+	 * @return Returns the sample frequency in Hz or 0 if it is not known yet.
+	 */
+	public float getFrequency()
+	{
+		float period = getPeriod();
+
+		if (period == 0)
+		{
+			return 0;
+		}
+
+		return 1 / period;
+	}
+
+	/**
+	 * Get the standard deviation of the sample periods over the window.
+	 *
+	 * @return Returns the jitter in seconds or 0 if it is not known yet.
+	 */
+	public float getJitter()
+	{
+		if (size < 2)
+		{
+			return 0;
+		}
+
+		double meanSquare = (double) sumSquares / size;
+		double mean = (double) sumMicros / size;
+
+		double variance = meanSquare - mean * mean;
+
+		if (variance <= 0)
+		{
+			return 0;
+		}
+
+		return (float) (Math.sqrt(variance) / 1000000);
+	}
+
+	/**
+	 * Get a percentile of the sample periods over the window, to within about
+	 * 3%. The gap between the 99th percentile and the average period is the
+	 * worst case jitter once rare outliers are left out. This scans the
+	 * histogram, so it is meant for displays rather than for every sample.
+	 *
+	 * @param percentile
+	 *            The percentile, between 0 and 1.
+	 * @return Returns the sample period in seconds or 0 if it is not known
+	 *         yet.
+	 */
+	public float getPeriodPercentile(float percentile)
+	{
+		if (size == 0)
+		{
+			return 0;
+		}
+
+		// The rank of the period, counting from one.
+		int rank = Math.max(1, (int) Math.ceil(percentile * size));
+
+		int seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += histogram[i];
+
+			if (seen >= rank)
+			{
+				return (float) (getBucketMidpoint(i) / 1000000.0);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Get the number of samples added since the last reset.
+	 *
+	 * @return Returns the sample count.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Get the number of samples missing from gaps in the timestamps since
+	 * the last reset.
+	 *
+	 * @return Returns the dropped sample count.
+	 */
+	public int getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Get the number of samples with a repeated or out of order timestamp
+	 * since the last reset.
+	 *
+	 * @return Returns the duplicate sample count.
+	 */
+	public int getDuplicates()
+	{
+		return duplicates;
+	}
+
+	public void reset()
+	{
+		while (size > 0)
+		{
+			remove(periods[(head - size) & mask]);
+
+			size--;
+		}
+
+		head = 0;
+		timestamp = 0;
+		count = 0;
+		dropped = 0;
+		duplicates = 0;
+	}
+
+	/**
+	 * Take a period that has left the window out of the sums.
+	 *
+	 * @param period
+	 *            The sample period in nanoseconds.
+	 */
+	private void remove(long period)
+	{
+		long micros = Math.min(period / 1000, MAX_SQUARED_PERIOD);
+
+		sum -= period;
+		sumMicros -= micros;
+		sumSquares -= micros * micros;
+		histogram[bucket(period)]--;
+	}
+
+	/**
+	 * Find the histogram bucket of a period. Periods under 32 us get a bucket
+	 * each, longer ones share 32 buckets per power of two.
+	 *
+	 * @param period
+	 *            The sample period in nanoseconds.
+	 * @return Returns the bucket index.
+	 */
+	private static int bucket(long period)
+	{
+		int micros = (int) Math.min(period / 1000, Integer.MAX_VALUE);
+
+		if (micros < SUB_BUCKETS)
+		{
+			return micros;
+		}
+
+		int exponent = 31 - Integer.numberOfLeadingZeros(micros);
+		int shift = exponent - SUB_BUCKET_BITS;
+
+		return (shift + 1) * SUB_BUCKETS
+				+ ((micros >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Find the middle of the periods a histogram bucket holds.
+	 *
+	 * @param bucket
+	 *            The bucket index.
+	 * @return Returns the sample period in microseconds.
+	 */
+	private static double getBucketMidpoint(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket + 0.5;
+		}
+
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+		return lower + (1L << shift) / 2.0;
+	}
+}
@@ -0,0 +1,487 @@
+package com.kircherelectronics.lowpasslinearacceleration.tuning;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthDesign;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogFiles;
+import com.kircherelectronics.lowpasslinearacceleration.log.LogReader;
+import com.kircherelectronics.lowpasslinearacceleration.rate.RateEstimator;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Picks the time constant and filter order for a recorded session. Every
+ * combination of a grid of time constants and orders is run over the session
+ * and scored against a reference gravity, the centered moving average of the
+ * raw acceleration over a window of about a second. The moving average has
+ * no lag, which no causal filter can match, so it shows what each candidate
+ * gives away in leak, lag and noise. See TuningCandidate.
+ *
+ * The log is read once. Each block is handed to every candidate, with the
+ * candidates split between a pool of threads, so the whole grid costs one
+ * pass over the data.
+ *
+ * Leak, lag and noise have different units, so each is scaled to the range
+ * the candidates span and the scores are the weighted sum of the scaled
+ * values. The best candidate has the lowest score.
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class FilterTuner
+{
+	// The window of the reference gravity in seconds
+	public final static float DEFAULT_REFERENCE_WINDOW = 1;
+
+	public final static float[] DEFAULT_TIME_CONSTANTS =
+	{ 0.05f, 0.1f, 0.15f, 0.2f, 0.3f, 0.5f, 0.75f, 1f, 1.5f, 2f, 3f, 5f };
+
+	public final static int[] DEFAULT_ORDERS =
+	{ TuningCandidate.SINGLE_POLE, 2, 4 };
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private final List<TuningCandidate> candidates;
+
+	private final float referenceWindow;
+
+	private float leakWeight = 1;
+	private float lagWeight = 1;
+	private float noiseWeight = 1;
+
+	/**
+	 * Create a new tuner.
+	 *
+	 * @param timeConstants
+	 *            The time constants to try in seconds.
+	 * @param orders
+	 *            The filter orders to try, TuningCandidate.SINGLE_POLE for
+	 *            the single pole filter or a Butterworth order.
+	 * @param referenceWindow
+	 *            The window of the reference gravity in seconds.
+	 */
+	public FilterTuner(float[] timeConstants, int[] orders,
+			float referenceWindow)
+	{
+		this.referenceWindow = referenceWindow;
+
+		candidates = new ArrayList<TuningCandidate>(timeConstants.length
+				* orders.length);
+
+		for (int i = 0; i < orders.length; i++)
+		{
+			if (orders[i] < 0 || orders[i] > ButterworthDesign.MAX_ORDER)
+			{
+				throw new IllegalArgumentException("Invalid order "
+						+ orders[i]);
+			}
+
+			for (int j = 0; j < timeConstants.length; j++)
+			{
+				candidates.add(new TuningCandidate(timeConstants[j],
+						orders[i], BLOCK_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Set how much leak, lag and noise count towards the score.
+	 *
+	 * @param leak
+	 *            The weight of the leak.
+	 * @param lag
+	 *            The weight of the lag.
+	 * @param noise
+	 *            The weight of the noise.
+	 */
+	public void setWeights(float leak, float lag, float noise)
+	{
+		leakWeight = leak;
+		lagWeight = lag;
+		noiseWeight = noise;
+	}
+
+	/**
+	 * Get the candidates, sorted by score once the session is tuned.
+	 *
+	 * @return Returns the candidates.
+	 */
+	public List<TuningCandidate> getCandidates()
+	{
+		return candidates;
+	}
+
+	/**
+	 * Run a session through every candidate and score them. A tuner scores
+	 * one session.
+	 *
+	 * @param reader
+	 *            The session. It is read to the end but not closed.
+	 * @param threads
+	 *            The number of threads to split the candidates between.
+	 * @return Returns the best candidate.
+	 * @throws IOException
+	 *             If the session can't be read.
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while waiting.
+	 */
+	public TuningCandidate tune(LogReader reader, int threads)
+			throws IOException, InterruptedException
+	{
+		final long[] timestamps = new long[BLOCK_SIZE];
+		final float[] acceleration = new float[BLOCK_SIZE * 3];
+		float[] lpfAcceleration = new float[BLOCK_SIZE * 3];
+
+		final float[] reference = new float[BLOCK_SIZE * 3];
+		final float[] slope = new float[BLOCK_SIZE * 3];
+
+		RateEstimator rateEstimator = new RateEstimator();
+
+		threads = Math.max(1, Math.min(threads, candidates.size()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		// Raw acceleration back to the start of the reference window, a ring
+		// indexed by sample
+		float[] history = null;
+		int mask = 0;
+
+		// The reference window is 2 * delay + 1 samples.
+		int delay = 0;
+
+		double[] sum = new double[3];
+		float[] previous = new float[3];
+
+		long index = 0;
+
+		try
+		{
+			int length;
+
+			while ((length = reader.read(timestamps, acceleration,
+					lpfAcceleration)) > 0)
+			{
+				for (int i = 0; i < length; i++)
+				{
+					rateEstimator.addSample(timestamps[i]);
+				}
+
+				final float frequency = rateEstimator.getFrequency();
+
+				if (history == null)
+				{
+					delay = Math.max(1, Math.round(referenceWindow
+							* frequency / 2));
+
+					int size = Integer.highestOneBit(2 * delay + 2) << 1;
+
+					history = new float[size * 3];
+					mask = size - 1;
+
+					// Score every candidate from where the slowest one has
+					// settled, so they are compared over the same samples.
+					long start = delay;
+
+					for (TuningCandidate candidate : candidates)
+					{
+						start = Math.max(start,
+								candidate.getSettleTime(frequency));
+					}
+
+					for (TuningCandidate candidate : candidates)
+					{
+						candidate.start(delay, frequency, start);
+					}
+				}
+
+				// The reference and its slope need a full window behind them.
+				int first = (int) Math.max(0,
+						Math.min(length, 2 * delay + 1 - index));
+
+				for (int i = 0, j = 0; i < length; i++, j += 3)
+				{
+					long n = index + i;
+
+					int h = (int) (n & mask) * 3;
+					int old = (int) ((n - 2 * delay - 1) & mask) * 3;
+
+					for (int k = 0; k < 3; k++)
+					{
+						history[h + k] = acceleration[j + k];
+
+						sum[k] += acceleration[j + k];
+
+						if (n > 2 * delay)
+						{
+							sum[k] -= history[old + k];
+						}
+
+						float mean = (float) (sum[k] / (2 * delay + 1));
+
+						slope[j + k] = mean - previous[k];
+						reference[j + k] = mean;
+
+						previous[k] = mean;
+					}
+				}
+
+				final int blockLength = length;
+				final long blockIndex = index;
+				final int blockFirst = first;
+
+				List<Future<Void>> futures = new ArrayList<Future<Void>>(
+						threads);
+
+				for (int t = 0; t < threads; t++)
+				{
+					final int slice = t;
+					final int slices = threads;
+
+					futures.add(executor.submit(new Callable<Void>()
+					{
+						@Override
+						public Void call()
+						{
+							int size = candidates.size();
+
+							for (int c = slice; c < size; c += slices)
+							{
+								candidates.get(c).addSamples(acceleration,
+										timestamps, blockLength, blockIndex,
+										frequency, reference, slope,
+										blockFirst);
+							}
+
+							return null;
+						}
+					}));
+				}
+
+				for (Future<Void> future : futures)
+				{
+					try
+					{
+						future.get();
+					}
+					catch (ExecutionException e)
+					{
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+
+				index += length;
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		score();
+
+		return candidates.get(0);
+	}
+
+	public static void main(String[] args)
+	{
+		float[] timeConstants = DEFAULT_TIME_CONSTANTS;
+		int[] orders = DEFAULT_ORDERS;
+
+		float window = DEFAULT_REFERENCE_WINDOW;
+
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		File log = null;
+
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-t") && i + 1 < args.length)
+				{
+					String[] values = args[++i].split(",");
+
+					timeConstants = new float[values.length];
+
+					for (int j = 0; j < values.length; j++)
+					{
+						timeConstants[j] = Float.parseFloat(values[j]);
+					}
+				}
+				else if (args[i].equals("-n") && i + 1 < args.length)
+				{
+					String[] values = args[++i].split(",");
+
+					orders = new int[values.length];
+
+					for (int j = 0; j < values.length; j++)
+					{
+						orders[j] = Integer.parseInt(values[j]);
+					}
+				}
+				else if (args[i].equals("-w") && i + 1 < args.length)
+				{
+					window = Float.parseFloat(args[++i]);
+				}
+				else if (args[i].equals("-j") && i + 1 < args.length)
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (log == null)
+				{
+					log = new File(args[i]);
+				}
+				else
+				{
+					log = null;
+
+					break;
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			log = null;
+		}
+
+		if (log == null || !(window > 0))
+		{
+			System.err.println("Usage: FilterTuner [-t timeConstant,...] "
+					+ "[-n order,...] [-w referenceWindow] [-j threads] "
+					+ "<log>");
+			System.err.println("An order of 0 is the single pole filter.");
+
+			System.exit(1);
+		}
+
+		try
+		{
+			FilterTuner tuner = new FilterTuner(timeConstants, orders, window);
+
+			LogReader reader = LogFiles.openReader(log);
+
+			TuningCandidate best;
+
+			try
+			{
+				best = tuner.tune(reader, threads);
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			System.out.println("Order,TimeConstant,Leak,Lag,Noise,Score");
+
+			for (TuningCandidate candidate : tuner.getCandidates())
+			{
+				System.out.println(String.format(Locale.US,
+						"%d,%.3f,%.6f,%.4f,%.6f,%.3f", candidate.getOrder(),
+						candidate.getTimeConstant(), candidate.getLeak(),
+						candidate.getLag(), candidate.getNoise(),
+						candidate.getScore()));
+			}
+
+			System.out.println(String.format(Locale.US,
+					"Best: time constant %.3f s, %s", best.getTimeConstant(),
+					best.getOrder() == TuningCandidate.SINGLE_POLE
+							? "single pole" : "Butterworth order "
+									+ best.getOrder()));
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+
+			System.exit(1);
+		}
+		catch (IOException e)
+		{
+			System.err.println(log + ": " + e.getMessage());
+
+			System.exit(1);
+		}
+		catch (InterruptedException e)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Score the candidates and sort them, best first.
+	 */
+	private void score()
+	{
+		float minLeak = Float.MAX_VALUE, maxLeak = 0;
+		float minLag = Float.MAX_VALUE, maxLag = 0;
+		float minNoise = Float.MAX_VALUE, maxNoise = 0;
+
+		for (TuningCandidate candidate : candidates)
+		{
+			minLeak = Math.min(minLeak, candidate.getLeak());
+			maxLeak = Math.max(maxLeak, candidate.getLeak());
+			minLag = Math.min(minLag, Math.abs(candidate.getLag()));
+			maxLag = Math.max(maxLag, Math.abs(candidate.getLag()));
+			minNoise = Math.min(minNoise, candidate.getNoise());
+			maxNoise = Math.max(maxNoise, candidate.getNoise());
+		}
+
+		for (TuningCandidate candidate : candidates)
+		{
+			float score = leakWeight
+					* scale(candidate.getLeak(), minLeak, maxLeak);
+
+			score += lagWeight
+					* scale(Math.abs(candidate.getLag()), minLag, maxLag);
+			score += noiseWeight
+					* scale(candidate.getNoise(), minNoise, maxNoise);
+
+			candidate.setScore(score);
+		}
+
+		Collections.sort(candidates, new Comparator<TuningCandidate>()
+		{
+			@Override
+			public int compare(TuningCandidate a, TuningCandidate b)
+			{
+				return Float.compare(a.getScore(), b.getScore());
+			}
+		});
+	}
+
+	/**
+	 * Scale a value to the range the candidates span.
+	 *
+	 * @return Returns a value from 0 for the best to 1 for the worst.
+	 */
+	private static float scale(float value, float min, float max)
+	{
+		return max > min ? (value - min) / (max - min) : 0;
+	}
+}
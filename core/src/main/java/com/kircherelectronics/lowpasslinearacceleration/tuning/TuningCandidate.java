@@ -0,0 +1,317 @@
+package com.kircherelectronics.lowpasslinearacceleration.tuning;
+
+import com.kircherelectronics.lowpasslinearacceleration.filter.ButterworthFilter;
+import com.kircherelectronics.lowpasslinearacceleration.filter.LowPassFilter;
+
+/*
+ * Low-Pass Linear Acceleration
+ * Copyright (C) 2013, Kaleb Kircher - Kircher Engineering, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * One filter configuration tried by the FilterTuner, with the statistics of
+ * how well its gravity estimate followed the reference gravity of the
+ * session:
+ *
+ * <ul>
+ * <li>Leak is the RMS of the difference between the estimate and the
+ * reference, the gravity left behind in the linear acceleration.</li>
+ * <li>Lag is how far the estimate trails the reference when the device turns,
+ * found by fitting the difference to the slope of the reference.</li>
+ * <li>Noise is the RMS of the sample to sample movement of the estimate that
+ * the reference doesn't share, the vibration let through into gravity.</li>
+ * </ul>
+ *
+ * @author Kaleb
+ * @version %I%, %G%
+ */
+public class TuningCandidate
+{
+	// The single pole LowPassFilter rather than a Butterworth filter
+	public final static int SINGLE_POLE = 0;
+
+	// Time constants skipped at the start before scoring, so the filter has
+	// settled
+	private static final float SETTLE_TIME_CONSTANTS = 3;
+
+	private final float timeConstant;
+
+	private final int order;
+
+	private final LowPassFilter lpf;
+	private final ButterworthFilter butterworth;
+
+	private final float[] output;
+
+	// The recent gravity estimates, a ring indexed by sample
+	private float[] estimates;
+	private int mask;
+
+	// The delay of the reference in samples
+	private int delay;
+
+	// The first sample scored
+	private long start;
+
+	private long count = 0;
+
+	private double sumError = 0;
+	private double sumNoise = 0;
+
+	// The fit of the error to the slope of the reference
+	private double sumErrorSlope = 0;
+	private double sumSlope = 0;
+
+	private float rate;
+
+	private float score = 0;
+
+	/**
+	 * Create a new candidate.
+	 *
+	 * @param timeConstant
+	 *            The time constant in seconds.
+	 * @param order
+	 *            The order of the Butterworth filter, or SINGLE_POLE.
+	 * @param blockSize
+	 *            The most samples in a block.
+	 */
+	public TuningCandidate(float timeConstant, int order, int blockSize)
+	{
+		this.timeConstant = timeConstant;
+		this.order = order;
+
+		if (order == SINGLE_POLE)
+		{
+			lpf = new LowPassFilter();
+			lpf.setWarmStart(LowPassFilter.DEFAULT_WARM_START);
+			lpf.setTimeConstant(timeConstant);
+
+			butterworth = null;
+		}
+		else
+		{
+			butterworth = new ButterworthFilter();
+			butterworth.setOrder(order);
+			butterworth.setTimeConstant(timeConstant);
+
+			lpf = null;
+		}
+
+		output = new float[blockSize * 3];
+	}
+
+	/**
+	 * Get the time constant of the filter.
+	 *
+	 * @return Returns the time constant in seconds.
+	 */
+	public float getTimeConstant()
+	{
+		return timeConstant;
+	}
+
+	/**
+	 * Get the order of the filter.
+	 *
+	 * @return Returns the order of the Butterworth filter, or SINGLE_POLE.
+	 */
+	public int getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * Get the number of samples scored.
+	 *
+	 * @return Returns the sample count.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Get the gravity leak.
+	 *
+	 * @return Returns the RMS gravity error, in the units of the log.
+	 */
+	public float getLeak()
+	{
+		return count > 0 ? (float) Math.sqrt(sumError / count) : 0;
+	}
+
+	/**
+	 * Get the lag.
+	 *
+	 * @return Returns the lag in seconds, or zero if the device never
+	 *         turned.
+	 */
+	public float getLag()
+	{
+		if (sumSlope == 0 || rate <= 0)
+		{
+			return 0;
+		}
+
+		return (float) (-sumErrorSlope / sumSlope / rate);
+	}
+
+	/**
+	 * Get the noise.
+	 *
+	 * @return Returns the RMS noise per sample, in the units of the log.
+	 */
+	public float getNoise()
+	{
+		return count > 0 ? (float) Math.sqrt(sumNoise / count) : 0;
+	}
+
+	/**
+	 * Get the score given by the tuner.
+	 *
+	 * @return Returns the score, lower is better.
+	 */
+	public float getScore()
+	{
+		return score;
+	}
+
+	void setScore(float score)
+	{
+		this.score = score;
+	}
+
+	/**
+	 * Get how long the filter takes to settle.
+	 *
+	 * @param rate
+	 *            The sample rate in Hz.
+	 * @return Returns the settle time in samples.
+	 */
+	long getSettleTime(float rate)
+	{
+		return Math.round(SETTLE_TIME_CONSTANTS * timeConstant * rate);
+	}
+
+	/**
+	 * Prepare to score once the sample rate is known.
+	 *
+	 * @param delay
+	 *            The delay of the reference in samples.
+	 * @param rate
+	 *            The sample rate in Hz.
+	 * @param start
+	 *            The first sample scored, the same for every candidate so
+	 *            they are scored over the same samples.
+	 */
+	void start(int delay, float rate, long start)
+	{
+		this.delay = delay;
+		this.rate = rate;
+
+		int size = Integer.highestOneBit(delay + 2) << 1;
+
+		estimates = new float[size * 3];
+		mask = size - 1;
+
+		this.start = start;
+	}
+
+	/**
+	 * Filter a block of samples and score the estimates the reference has
+	 * caught up with.
+	 *
+	 * @param samples
+	 *            The interleaved raw acceleration.
+	 * @param timestamps
+	 *            The time of each sample in nanoseconds.
+	 * @param length
+	 *            The number of samples.
+	 * @param index
+	 *            The index of the first sample in the session.
+	 * @param frequency
+	 *            The measured sample rate in Hz, or zero if it isn't known.
+	 * @param reference
+	 *            The reference gravity of the sample delay samples before
+	 *            each sample.
+	 * @param slope
+	 *            The change in the reference gravity from the sample before.
+	 * @param first
+	 *            The first sample in the block with a reference.
+	 */
+	void addSamples(float[] samples, long[] timestamps, int length,
+			long index, float frequency, float[] reference, float[] slope,
+			int first)
+	{
+		if (lpf != null)
+		{
+			if (frequency > 0)
+			{
+				lpf.setSampleRate(frequency);
+			}
+
+			lpf.addSamples(samples, timestamps, length, output);
+		}
+		else
+		{
+			if (frequency > 0)
+			{
+				butterworth.setSampleRate(frequency);
+			}
+
+			butterworth.addSamples(samples, timestamps, length, output);
+		}
+
+		for (int i = 0, j = 0; i < length; i++, j += 3)
+		{
+			long n = index + i;
+
+			int e = (int) (n & mask) * 3;
+
+			// The filter writes the linear acceleration, so recover its
+			// gravity estimate.
+			estimates[e] = samples[j] - output[j];
+			estimates[e + 1] = samples[j + 1] - output[j + 1];
+			estimates[e + 2] = samples[j + 2] - output[j + 2];
+
+			long m = n - delay;
+
+			if (i < first || m < start)
+			{
+				continue;
+			}
+
+			int current = (int) (m & mask) * 3;
+			int previous = (int) ((m - 1) & mask) * 3;
+
+			for (int k = 0; k < 3; k++)
+			{
+				double error = estimates[current + k] - reference[j + k];
+				double noise = estimates[current + k]
+						- estimates[previous + k] - slope[j + k];
+
+				sumError += error * error;
+				sumNoise += noise * noise;
+
+				sumErrorSlope += error * slope[j + k];
+				sumSlope += slope[j + k] * slope[j + k];
+			}
+
+			count++;
+		}
+	}
+}